@@ -0,0 +1,78 @@
+package me.artificial.autoserver.benchmarks;
+
+import me.artificial.autoserver.common.BackendConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up settings the Boot Listener reads for every command, from a config with several servers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BackendConfigBenchmark {
+    private static final String CONFIG = """
+            bootListener:
+              port: 8080
+              mode: agent
+              maxRequestsPerConnection: 4
+            servers:
+              survival:
+                workingDirectory: "/home/user/servers/survival"
+                startCommand: "java -Xmx4G -jar server.jar nogui"
+                port: 25565
+              creative:
+                workingDirectory: "/home/user/servers/creative"
+                startCommand: "java -Xmx2G -jar server.jar nogui"
+                port: 25566
+            security:
+              enabled: true
+              secret: "Vq3kX9mPz2LwT8rY"
+            """;
+
+    private Path directory;
+    private BackendConfig config;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("autoserver-benchmark");
+        Files.writeString(directory.resolve("config.yml"), CONFIG, StandardCharsets.UTF_8);
+        config = new BackendConfig(directory.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("config.yml"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Integer topLevelInt() {
+        return config.getInt("bootListener.maxRequestsPerConnection");
+    }
+
+    @Benchmark
+    public boolean topLevelBoolean() {
+        return config.getBoolean("security.enabled", true);
+    }
+
+    @Benchmark
+    public String serverString() {
+        return config.getString(config.serverPath("creative", "startCommand"));
+    }
+
+    @Benchmark
+    public Object serverNames() {
+        return config.getServerNames();
+    }
+
+    @Benchmark
+    public String missingSetting() {
+        return config.getString("servers.creative.stopCommand");
+    }
+}
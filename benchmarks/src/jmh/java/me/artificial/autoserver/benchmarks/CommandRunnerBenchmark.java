@@ -0,0 +1,33 @@
+package me.artificial.autoserver.benchmarks;
+
+import me.artificial.autoserver.common.CommandRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits start commands into arguments, the quote aware split regex scans ahead to the end of the
+ * command for every space, so long commands with quotes are the expensive case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandRunnerBenchmark {
+    @Param({
+            "java -jar server.jar nogui",
+            "screen -DmS survival java -Xms2G -Xmx4G -XX:+UseG1GC -jar \"paper server.jar\" nogui",
+            "bash -c 'cd \"/home/user/servers/my survival\" && java -Xmx4G -jar server.jar nogui' --login -x -e"
+    })
+    public String command;
+
+    @Benchmark
+    public List<String> tokenize() {
+        return CommandRunner.tokenize(command, false);
+    }
+
+    @Benchmark
+    public List<String> tokenizePreservingQuotes() {
+        return CommandRunner.tokenize(command, true);
+    }
+}
@@ -0,0 +1,74 @@
+package me.artificial.autoserver.benchmarks;
+
+import me.artificial.autoserver.common.HMAC;
+import me.artificial.autoserver.common.HmacSigner;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs and verifies a session command the way {@link HMAC} did before, with a new {@link Mac} and
+ * key per message, a Base64 signature, and a string compare, against {@link HMAC} on top of the cached
+ * {@link HmacSigner}, and against the raw signatures of communication version 3.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HmacBenchmark {
+    private static final String SECRET = "Vq3kX9mPz2LwT8rY";
+    private static final String MESSAGE = "42 BOOT_SERVER survival";
+
+    private final byte[] data = MESSAGE.getBytes(StandardCharsets.UTF_8);
+    private final byte[] signature = new byte[HmacSigner.MAC_LENGTH];
+    private final byte[] expected = new byte[HmacSigner.MAC_LENGTH];
+    private HmacSigner signer;
+    private String base64Signature;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        signer = HmacSigner.forSecret(SECRET);
+        signer.sign(data, 0, data.length, signature, 0);
+        base64Signature = HMAC.signMessage(MESSAGE, SECRET);
+    }
+
+    @Benchmark
+    public String signUncached() throws Exception {
+        return legacySign(MESSAGE, SECRET);
+    }
+
+    @Benchmark
+    public boolean verifyUncached() throws Exception {
+        return legacySign(MESSAGE, SECRET).equals(base64Signature);
+    }
+
+    @Benchmark
+    public String signCached() throws Exception {
+        return HMAC.signMessage(MESSAGE, SECRET);
+    }
+
+    @Benchmark
+    public boolean verifyCached() throws Exception {
+        return HMAC.verifyMessage(MESSAGE, base64Signature, SECRET);
+    }
+
+    @Benchmark
+    public byte[] signRaw() {
+        signer.sign(data, 0, data.length, expected, 0);
+        return expected;
+    }
+
+    @Benchmark
+    public boolean verifyRaw() {
+        return signer.verify(data, 0, data.length, expected, signature, 0);
+    }
+
+    private static String legacySign(String message, String secret) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(message.getBytes()));
+    }
+}
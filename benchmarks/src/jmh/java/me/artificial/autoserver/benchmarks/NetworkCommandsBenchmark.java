@@ -0,0 +1,74 @@
+package me.artificial.autoserver.benchmarks;
+
+import me.artificial.autoserver.common.ControlProtocol;
+import me.artificial.autoserver.common.NetworkCommands;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes a control session command with the text frames of communication version 2,
+ * and with the binary {@link ControlProtocol} of version 3, both signed and unsigned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NetworkCommandsBenchmark {
+    private static final String SECRET = "Vq3kX9mPz2LwT8rY";
+    private static final String SERVER = "survival";
+
+    @Param({"true", "false"})
+    public boolean security;
+
+    private String secret;
+    private String message;
+    private byte[] textFrame;
+    private ControlProtocol.Codec encoder;
+    private ControlProtocol.Codec decoder;
+    private final ControlProtocol.Frame frame = new ControlProtocol.Frame();
+    private final ByteBuffer out = ByteBuffer.allocate(256);
+    private ByteBuffer binaryFrame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        secret = security ? SECRET : null;
+        message = NetworkCommands.withRequestId(42, NetworkCommands.withServer(NetworkCommands.BOOT, SERVER));
+        byte[] encoded = NetworkCommands.encodeData(message, security, secret);
+        // decodeData takes the frame without its length prefix
+        textFrame = Arrays.copyOfRange(encoded, 4, encoded.length);
+
+        encoder = new ControlProtocol.Codec(secret);
+        decoder = new ControlProtocol.Codec(secret);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        encoder.encode(buffer, NetworkCommands.BOOT, 42, SERVER);
+        binaryFrame = buffer.flip();
+    }
+
+    @Benchmark
+    public byte[] encodeText() {
+        return NetworkCommands.encodeData(message, security, secret);
+    }
+
+    @Benchmark
+    public boolean decodeText() {
+        NetworkCommands.DecodedMessage decoded = NetworkCommands.decodeData(textFrame, security);
+        return decoded.verify(secret);
+    }
+
+    @Benchmark
+    public int encodeBinary() {
+        out.clear();
+        encoder.encode(out, NetworkCommands.BOOT, 42, SERVER);
+        return out.position();
+    }
+
+    @Benchmark
+    public int decodeBinary() throws ProtocolException {
+        binaryFrame.rewind();
+        decoder.decode(binaryFrame, frame);
+        return frame.getRequestId();
+    }
+}
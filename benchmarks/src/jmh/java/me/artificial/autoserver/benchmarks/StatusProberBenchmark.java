@@ -0,0 +1,135 @@
+package me.artificial.autoserver.benchmarks;
+
+import me.artificial.autoserver.common.StatusProber;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks a batch of loopback backends, half listening and half refusing, with the selector based
+ * {@link StatusProber} and with the blocking socket connect inside supplyAsync that the proxy used
+ * as a ping fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StatusProberBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Param({"50", "200"})
+    public int backends;
+
+    private final List<ServerSocketChannel> listening = new ArrayList<>();
+    private final List<InetSocketAddress> addresses = new ArrayList<>();
+    private Selector acceptor;
+    private Thread acceptorThread;
+    private StatusProber prober;
+    private ExecutorService commonPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        acceptor = Selector.open();
+        for (int i = 0; i < backends; i++) {
+            if (i % 2 == 0) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.bind(new InetSocketAddress(loopback, 0), 512);
+                channel.configureBlocking(false);
+                channel.register(acceptor, SelectionKey.OP_ACCEPT);
+                addresses.add((InetSocketAddress) channel.getLocalAddress());
+                listening.add(channel);
+            } else {
+                // Closed again so connecting to the port is refused
+                ServerSocket socket = new ServerSocket(0, 1, loopback);
+                addresses.add(new InetSocketAddress(loopback, socket.getLocalPort()));
+                socket.close();
+            }
+        }
+        // Connections are accepted and closed straight away, a full backlog would stall later iterations
+        acceptorThread = new Thread(this::acceptLoop, "Benchmark-Acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+        prober = new StatusProber("Benchmark-StatusProber");
+        commonPool = Executors.newWorkStealingPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        prober.close();
+        commonPool.shutdownNow();
+        acceptor.close();
+        for (ServerSocketChannel channel : listening) {
+            channel.close();
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (acceptor.isOpen()) {
+                acceptor.select();
+                for (SelectionKey key : acceptor.selectedKeys()) {
+                    SocketChannel accepted;
+                    while ((accepted = ((ServerSocketChannel) key.channel()).accept()) != null) {
+                        accepted.close();
+                    }
+                }
+                acceptor.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException ignored) {
+            // torn down
+        }
+    }
+
+    @Benchmark
+    public int statusProber() {
+        List<CompletableFuture<StatusProber.Result>> probes = new ArrayList<>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            probes.add(prober.probe(address, TIMEOUT, false));
+        }
+        int online = 0;
+        for (CompletableFuture<StatusProber.Result> probe : probes) {
+            if (probe.join().isOnline()) {
+                online++;
+            }
+        }
+        return online;
+    }
+
+    @Benchmark
+    public int blockingConnect() {
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            probes.add(CompletableFuture.supplyAsync(() -> {
+                try (Socket socket = new Socket()) {
+                    socket.connect(address, (int) TIMEOUT.toMillis());
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }, commonPool));
+        }
+        int online = 0;
+        for (CompletableFuture<Boolean> probe : probes) {
+            if (probe.join()) {
+                online++;
+            }
+        }
+        return online;
+    }
+}
@@ -3,10 +3,13 @@ package me.artificial.autoserver.common;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.util.List;
 import java.util.Map;
 
 public class BackendConfig {
     public static final String DIRECTORY_NAME_DEFAULT = "AutoServer";
+    /** Name of the server in a config with a single {@code server} section */
+    public static final String DEFAULT_SERVER = "default";
     private static final String CONFIG_FILE = "config.yml";
 
     private final File configDirectory;
@@ -60,6 +63,38 @@ public class BackendConfig {
         return (value instanceof Integer) ? (Integer) value : null;
     }
 
+    /**
+     * @return Names of the servers in the {@code servers} section, or just {@link #DEFAULT_SERVER} for a
+     *         config with a single {@code server} section.
+     */
+    public List<String> getServerNames() {
+        if (followPath("servers") instanceof Map<?, ?> servers && !servers.isEmpty()) {
+            return servers.keySet().stream().map(String::valueOf).toList();
+        }
+        return List.of(DEFAULT_SERVER);
+    }
+
+    /**
+     * Builds the path of a setting of one server.
+     *
+     * @param serverName A name from {@link #getServerNames()}.
+     * @param key The setting, for example "startCommand".
+     * @return "servers.name.key", or "server.key" for a config with a single {@code server} section.
+     */
+    public String serverPath(String serverName, String key) {
+        if (followPath("servers." + serverName) instanceof Map) {
+            return "servers." + serverName + "." + key;
+        }
+        return "server." + key;
+    }
+
+    /**
+     * @return true if the Boot Listener runs all the time and supervises the server, see {@code bootListener.mode}.
+     */
+    public boolean isAgentMode() {
+        return "agent".equalsIgnoreCase(getString("bootListener.mode"));
+    }
+
     public String getConfigPath() {
         return configDirectory.getPath();
     }
@@ -1,71 +1,254 @@
 package me.artificial.autoserver.common;
 
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.Socket;
-import java.net.SocketException;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Listens for commands from the proxy to start, stop, and check on the backend servers of this machine.
+ * <p>
+ * All connections are served by one selector thread. Frames are assembled from as many reads as it
+ * takes before they are decoded, heartbeats are answered right there, and commands that take a while
+ * run on a small fixed pool of workers. Answers are queued per connection and written by the selector
+ * thread as the socket accepts them.
+ * <p>
+ * By default the listener only runs while the server is stopped and exits once it has started it. In
+ * agent mode it runs all the time instead, starts the server as its own child through a
+ * {@link ServerSupervisor}, and answers every command whether the server is up or not.
+ * <p>
+ * One listener can manage several servers, each configured under {@code servers.<name>}. Commands from
+ * the proxy name the server they are for, commands without a name go to the only server, or to the one
+ * called {@value BackendConfig#DEFAULT_SERVER}. A listener that is not an agent only exits after a boot
+ * when it manages a single server, otherwise the other servers could no longer be started.
+ */
 public class BootListener {
     private final static String PROMPT = "> ";
     private final static int CLIENT_TIMEOUT = 5000;
     private final static int SERVER_RETRIES = 10;
     private final static int DELAY_BETWEEN_RETIRES = 5000; // 5 seconds
+    private final static int READY_CHECK_INTERVAL = 1000;
+    private final static int PROGRESS_INTERVAL = 2000;
+    private final static int PORT_CONNECT_TIMEOUT = 500;
+    private final static int DEFAULT_READY_TIMEOUT = 300; // seconds
+    private final static int SESSION_TIMEOUT = 10000; // proxy sends a heartbeat every few seconds
+    private final static int MAX_FRAME_LENGTH = 64 * 1024;
+    private final static int SELECT_TIMEOUT = 1000;
+    private final static int READ_BUFFER_SIZE = 1024;
+    private final static int WRITE_BUFFER_SIZE = 256;
+    private final static int REPLAY_GUARD_SIZE = 1024;
+    private final static int DEFAULT_MAX_CONNECTIONS = 16;
+    private final static int DEFAULT_MAX_REQUESTS_PER_CONNECTION = 4;
+    private final static int DEFAULT_WORKER_THREADS = 4;
+    private final static int WORKER_QUEUE_SIZE = 32;
+    private final static int AGENT_STOP_TIMEOUT = 60; // seconds
 
-    private final ExecutorService clientHandlers = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final ControlProtocol.ReplayGuard replayGuard = new ControlProtocol.ReplayGuard(REPLAY_GUARD_SIZE);
+    private ThreadPoolExecutor workers;
+    private final Map<String, ServerSupervisor> supervisors = new ConcurrentHashMap<>();
+    private final Launcher launcher;
+    private boolean agentMode = false;
     private Integer port = null;
     private BackendConfig config = null;
-    private ServerSocket serverSocket = null;
+    private Selector selector = null;
+    private ServerSocketChannel serverChannel = null;
     private volatile boolean running = true;
     private Thread socketThread;
     private Thread cliThread;
 
+    /**
+     * State of one proxy connection. Only the selector thread reads or closes it, other threads
+     * queue frames through {@link #send(Connection, int, String)}.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String address;
+        private final Object writeLock = new Object();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final long connectedAt = System.currentTimeMillis();
+        private final ControlProtocol.Frame frame = new ControlProtocol.Frame();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private ByteBuffer output = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private long lastRead = connectedAt;
+        private int version = 0;
+        private boolean session = false;
+        private boolean commandReceived = false;
+        private boolean securityEnabled = true;
+        private String secret = null;
+        private ControlProtocol.Codec decoder = null;
+        private ControlProtocol.Codec encoder = null;
+        private volatile boolean closeWhenFlushed = false;
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.address = String.valueOf(channel.socket().getInetAddress());
+        }
+
+        /**
+         * Makes room for a frame in the output buffer, hold the write lock.
+         */
+        private void ensureWritable(int length) {
+            if (output.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + length));
+                output.flip();
+                larger.put(output);
+                output = larger;
+            }
+        }
+    }
+
+    /**
+     * Launches a backend server in place of its {@code startCommand}.
+     */
+    @FunctionalInterface
+    public interface Launcher {
+        /**
+         * @return The launched server, or null if it could not be started.
+         */
+        CommandRunner.CommandResult launch(String serverName);
+    }
+
+    /**
+     * Creates a listener that reads its config next to the jar and runs the configured start commands.
+     */
+    public BootListener() {
+        this.launcher = this::startBackendServer;
+    }
+
+    /**
+     * Creates a listener to run inside another program, the load test for example.
+     *
+     * @param config The config to use instead of the one next to the jar.
+     * @param launcher Starts the servers, instead of running their start commands.
+     */
+    public BootListener(BackendConfig config, Launcher launcher) {
+        this.config = config;
+        this.launcher = launcher;
+    }
+
     public static void main(String[] args) {
         BootListener bootListener = new BootListener();
         bootListener.start();
     }
 
     private void start() {
-        if (!initialize()) return;
-
-        if (!setupServerSocket()) return;
-
-        sendBannerMessage();
-
-        socketThread = new Thread(this::socketServerLoop);
-        cliThread = new Thread(this::cliLoop);
+        if (!open()) return;
 
-        socketThread.start();
+        cliThread = new Thread(this::cliLoop, "BootListener-CLI");
+        // blocked on stdin until a line arrives, must not keep the listener alive
+        cliThread.setDaemon(true);
         cliThread.start();
 
-        // Wait for both treads to finish
+        // The network thread finishes once the listener is stopped
         try {
-            cliThread.join();
             socketThread.join();
         } catch (InterruptedException ignored) {}
 
         System.out.println("Backend Listener exited.");
     }
 
+    /**
+     * Starts listening without a cli and returns straight away.
+     *
+     * @return false if the listener could not be started.
+     */
+    public boolean startInBackground() {
+        return open();
+    }
+
+    /**
+     * Stops the listener, and the backend servers in agent mode.
+     */
+    public void stop() {
+        stopAll();
+    }
+
+    /**
+     * @return true until the listener has stopped and closed its socket.
+     */
+    public boolean isRunning() {
+        return socketThread != null && socketThread.isAlive();
+    }
+
+    private boolean open() {
+        if (!initialize()) return false;
+
+        if (!setupServerSocket()) return false;
+
+        int workerThreads = Math.max(1, Optional.ofNullable(config.getInt("bootListener.workerThreads")).orElse(DEFAULT_WORKER_THREADS));
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "BootListener-Worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.allowCoreThreadTimeOut(true);
+
+        sendBannerMessage();
+
+        socketThread = new Thread(this::socketServerLoop, "BootListener-Network-" + port);
+        socketThread.start();
+        return true;
+    }
+
     private boolean initialize() {
-        String path;
-        try {
-            path = new File(BootListener.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent();
-        } catch (URISyntaxException e) {
-            System.err.println("Unable to resolve the file path for the config directory.");
-            return false;
+        if (config == null) {
+            String path;
+            try {
+                path = new File(BootListener.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getParent();
+            } catch (URISyntaxException e) {
+                System.err.println("Unable to resolve the file path for the config directory.");
+                return false;
+            }
+            this.config = new BackendConfig(new File(path, BackendConfig.DIRECTORY_NAME_DEFAULT));
         }
-        this.config = new BackendConfig(new File(path, BackendConfig.DIRECTORY_NAME_DEFAULT));
         this.port = config.getInt("bootListener.port");
         if (port == null) {
             System.err.println("Missing required setting \"bootListener.port\". Please add and restart.");
             return false;
         }
+        agentMode = config.isAgentMode();
+        List<String> serverNames = config.getServerNames();
+        if (!agentMode && serverNames.size() > 1) {
+            System.out.println("Managing " + serverNames.size() + " servers without agent mode, the listener keeps running after a boot.");
+        }
         return true;
     }
 
@@ -74,10 +257,16 @@ public class BootListener {
         while (running && retries-- > 0) {
             try {
                 assert port != null;
-                serverSocket = new ServerSocket(port);
+                selector = Selector.open();
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(port));
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
                 return true;
             } catch (IOException e) {
                 System.out.println("Error starting server: " + e.getMessage());
+                closeQuietly(serverChannel);
+                closeQuietly(selector);
             }
 
             System.out.println("Retrying to start server in " + (DELAY_BETWEEN_RETIRES / 1000) + " seconds...");
@@ -99,6 +288,9 @@ public class BootListener {
         System.out.println("Current date: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()));
         System.out.println("Config path: " + config.getConfigPath());
         System.out.println("Boot Listener listening on port: " + port);
+        System.out.println("Servers: " + String.join(", ", config.getServerNames()));
+        System.out.println("Mode: " + (agentMode ? "agent, supervising the backend servers"
+                : exitsAfterBoot() ? "listener, exits once the backend server is started" : "listener"));
         System.out.println("Type \"help\" for list of cli commands.");
         System.out.println("================================================");
     }
@@ -106,143 +298,663 @@ public class BootListener {
     private void cliLoop() {
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         System.out.print(PROMPT);
-        while (running) {
-            try {
-                if (reader.ready()) {
-                    String command = reader.readLine();
-                    processCliCommand(command.trim());
-                    if (running) {
-                        System.out.print(PROMPT);
-                    }
+        try {
+            String command;
+            while (running && (command = reader.readLine()) != null) {
+                processCliCommand(command.trim());
+                if (running) {
+                    System.out.print(PROMPT);
                 }
-                Thread.sleep(100); // Avoid hogging CPU
-            } catch (Exception ignored) {}
+            }
+        } catch (IOException e) {
+            System.err.println("Stopped reading cli commands: " + e.getMessage());
         }
     }
 
     private void socketServerLoop() {
-        while (running) {
-            try {
-                Socket clientSocket = serverSocket.accept();
-                clientSocket.setSoTimeout(CLIENT_TIMEOUT);
-                System.out.println("Connection received from: " + clientSocket.getInetAddress());
-                clientHandlers.submit(() -> handleClient(clientSocket));
-            } catch (SocketException e) {
-                if (running) {
-                    System.err.println("ServerSocket accept error: " + e.getMessage());
-                } else {
-                    System.out.println("Server shutting down gracefully.");
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT);
+                flushPendingWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error handling client: " + e.getMessage());
+                        close(connection);
+                    } catch (RuntimeException e) {
+                        // a bad frame only costs its own connection, never the network thread
+                        System.err.println("Error handling client " + connection.address + ": " + e);
+                        close(connection);
+                    }
                 }
-                break;
-            } catch (IOException e) {
-                System.err.println("Error accepting client connection: " + e.getMessage());
+                closeIdleConnections();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Selector error: " + e.getMessage());
+            }
+        } finally {
+            System.out.println("Server shutting down gracefully.");
+            for (Connection connection : connections) {
+                // last answers such as READY are usually still queued
+                try {
+                    write(connection);
+                } catch (IOException ignored) {}
+                close(connection);
             }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
         }
     }
 
-    private void handleClient(Socket clientSocket) {
-        boolean securityEnabled = config.getBoolean("security.enabled", true);
-        String secret = config.getString("security.secret");
-        if (securityEnabled && secret == null) {
-            System.out.println("Security is enabled, but the required setting \"security.secret\" is missing. Please add the setting and restart.");
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                System.err.println("Error closing client socket: " + e.getMessage());
-            }
-            System.out.println("Client socket closed successfully");
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        int maxConnections = Optional.ofNullable(config.getInt("bootListener.maxConnections")).orElse(DEFAULT_MAX_CONNECTIONS);
+        if (connections.size() >= maxConnections) {
+            System.err.println("Rejecting connection from " + channel.socket().getInetAddress() + ", already serving " + maxConnections + " connections.");
+            closeQuietly(channel);
             return;
         }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(channel, key);
+        key.attach(connection);
+        connections.add(connection);
+        System.out.println("Connection received from: " + connection.address);
+    }
 
-        try (InputStream input = clientSocket.getInputStream();
-             OutputStream output = clientSocket.getOutputStream()) {
-            System.out.println("Client Thread waiting for command");
+    /**
+     * Reads what is available and handles every frame that is complete. A frame split over several
+     * reads stays in the buffer until the rest arrives.
+     */
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.readBuffer) == -1) {
+            close(connection);
+            return;
+        }
+        connection.lastRead = System.currentTimeMillis();
 
-            byte[] lengthBytes = new byte[4];
-            if (input.read(lengthBytes) != 4) {
-                throw new RuntimeException("Failed to read length bytes.");
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        int frameLength;
+        while ((frameLength = frameLength(buffer)) >= 0 && buffer.remaining() >= frameLength) {
+            if (buffer.get(buffer.position()) == ControlProtocol.VERSION) {
+                handleBinaryFrame(connection, buffer);
+            } else {
+                buffer.getInt();
+                byte[] dataBytes = new byte[frameLength - 4];
+                buffer.get(dataBytes);
+                handleFrame(connection, dataBytes);
+            }
+            if (!connection.channel.isOpen()) {
+                return;
             }
+        }
+        buffer.compact();
 
-            ByteBuffer lengthBuffer = ByteBuffer.wrap(lengthBytes);
-            int totalLength = lengthBuffer.getInt();
-            System.out.println("length of total bytes received: " + totalLength);
+        // grow the buffer when the frame being assembled does not fit
+        if (frameLength > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(frameLength);
+            buffer.flip();
+            larger.put(buffer);
+            connection.readBuffer = larger;
+        }
+    }
 
-            byte[] dataBytes = new byte[totalLength];
-            if (input.read(dataBytes) != totalLength) {
-                throw new RuntimeException("Failed to read the full message.");
-            }
+    /**
+     * @return Length of the version 2 or 3 frame at the position of the buffer including its header,
+     *         or -1 if the header is not complete yet.
+     */
+    private static int frameLength(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        if (buffer.get(buffer.position()) == ControlProtocol.VERSION) {
+            return ControlProtocol.frameLength(buffer);
+        }
+        if (buffer.remaining() < 4) {
+            return -1;
+        }
+        int totalLength = buffer.getInt(buffer.position());
+        if (totalLength < 0 || totalLength > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + totalLength);
+        }
+        return 4 + totalLength;
+    }
 
-            NetworkCommands.DecodedMessage decodedMessage = NetworkCommands.decodeData(dataBytes, securityEnabled);
+    /**
+     * Settles the protocol version of a connection with its first frame, and reads the security
+     * settings for it.
+     *
+     * @return true if the frame may be handled, false if the connection was closed.
+     */
+    private boolean negotiate(Connection connection, int version) {
+        if (connection.version == version) {
+            return true;
+        }
+        if (connection.version != 0) {
+            System.out.println("Client " + connection.address + " switched protocol version, closing the connection.");
+            close(connection);
+            return false;
+        }
+        connection.version = version;
+        connection.securityEnabled = config.getBoolean("security.enabled", true);
+        connection.secret = config.getString("security.secret");
+        if (connection.securityEnabled && connection.secret == null) {
+            System.out.println("Security is enabled, but the required setting \"security.secret\" is missing. Please add the setting and restart.");
+            close(connection);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handles a communication version 2 frame, see {@link NetworkCommands#encodeData(String, Boolean, String)}.
+     * Every message in a control session is prefixed with a request id.
+     */
+    private void handleFrame(Connection connection, byte[] dataBytes) {
+        if (!negotiate(connection, 2)) {
+            return;
+        }
+        NetworkCommands.DecodedMessage decodedMessage = NetworkCommands.decodeData(dataBytes, connection.securityEnabled);
+        if (!connection.session) {
+            System.out.println("length of total bytes received: " + dataBytes.length);
             System.out.println("Received command: " + decodedMessage);
+        }
+
+        if (decodedMessage.isMalformed()) {
+            System.err.println("Error handling client: Received a malformed message.");
+            close(connection);
+            return;
+        }
+        if (!decodedMessage.verify(connection.secret)) {
+            System.out.println("Authentication failed! Rejecting command.");
+            close(connection);
+            return;
+        }
+
+        String message = decodedMessage.getCommand();
+        int requestId = 0;
+        if (connection.session) {
+            NetworkCommands.SessionMessage sessionMessage = NetworkCommands.parseSessionMessage(message);
+            if (sessionMessage == null) {
+                System.out.println("Control session message without a request id: " + message);
+                return;
+            }
+            requestId = sessionMessage.requestId();
+            message = sessionMessage.command();
+        }
+        NetworkCommands.ServerCommand command = NetworkCommands.parseServerCommand(message);
+        handleCommand(connection, requestId, command.command(), command.serverName());
+    }
+
+    /**
+     * Handles a communication version 3 frame, see {@link ControlProtocol}.
+     */
+    private void handleBinaryFrame(Connection connection, ByteBuffer buffer) {
+        if (!negotiate(connection, ControlProtocol.VERSION)) {
+            return;
+        }
+        if (connection.decoder == null) {
+            String secret = connection.securityEnabled ? connection.secret : null;
+            connection.decoder = new ControlProtocol.Codec(secret);
+            connection.encoder = new ControlProtocol.Codec(secret);
+        }
+
+        ControlProtocol.Frame frame = connection.frame;
+        try {
+            connection.decoder.decode(buffer, frame);
+        } catch (ProtocolException e) {
+            System.out.println("Rejected frame from " + connection.address + ": " + e.getMessage());
+            close(connection);
+            return;
+        }
+        if (frame.isSigned() && !replayGuard.accept(frame.getTimestamp(), frame.getNonce())) {
+            System.out.println("Rejected a replayed or outdated frame from " + connection.address
+                    + ", check that the clocks of both machines are in sync.");
+            close(connection);
+            return;
+        }
+        if (frame.getCommand() == null) {
+            System.out.println("Unknown opcode " + frame.getOpcode() + " from " + connection.address);
+            send(connection, frame.getRequestId(), NetworkCommands.ERROR);
+            if (!connection.session) {
+                closeWhenFlushed(connection);
+            }
+            return;
+        }
+        handleCommand(connection, frame.getRequestId(), frame.getCommand(), frame.getServerName());
+    }
 
-            if (decodedMessage.isMalformed()) {
-                throw new RuntimeException("Received a malformed message.");
+    /**
+     * Runs a decoded command. Outside a session a connection carries one command, or the request to turn
+     * it into a session. Answers carry the request id so the proxy can have several commands in flight.
+     *
+     * @param serverName The server the command is for, or null if it does not name one.
+     */
+    private void handleCommand(Connection connection, int requestId, String command, String serverName) {
+        Consumer<String> reply = frame -> send(connection, requestId, frame);
+        if (!connection.session) {
+            if (connection.commandReceived) {
+                System.out.println("Ignoring extra message from " + connection.address);
+                return;
+            }
+            if (NetworkCommands.SESSION.equals(command)) {
+                System.out.println("Control session opened with " + connection.address);
+                // sent before the flag is set, version 2 answers the handshake without a request id
+                reply.accept(NetworkCommands.SESSION_ACCEPTED);
+                connection.session = true;
+                return;
             }
+            System.out.println("Authenticated command: " + NetworkCommands.withServer(command, serverName));
+            connection.commandReceived = true;
+            // one command per connection outside a session, close once the answers are out
+            submit(connection, command, serverName, reply, () -> closeWhenFlushed(connection));
+            return;
+        }
+
+        if (NetworkCommands.PING.equals(command)) {
+            reply.accept(NetworkCommands.PONG);
+            return;
+        }
+        System.out.println("Authenticated command: " + NetworkCommands.withServer(command, serverName) + " (request " + requestId + ")");
+        int maxRequests = Optional.ofNullable(config.getInt("bootListener.maxRequestsPerConnection")).orElse(DEFAULT_MAX_REQUESTS_PER_CONNECTION);
+        if (connection.inFlight.get() >= maxRequests) {
+            System.err.println("Control session already has " + maxRequests + " requests running, rejecting " + command);
+            reply.accept(NetworkCommands.ERROR);
+            return;
+        }
+        submit(connection, command, serverName, reply, () -> {});
+    }
+
+    private void submit(Connection connection, String command, String serverName, Consumer<String> reply, Runnable done) {
+        connection.inFlight.incrementAndGet();
+        try {
+            workers.execute(() -> {
+                CompletableFuture<Void> finished;
+                try {
+                    finished = processRemoteCommand(command, serverName, reply);
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling client: " + e.getMessage());
+                    finished = CompletableFuture.completedFuture(null);
+                } finally {
+                    // the worker is free again, a boot waiting for its server no longer counts
+                    connection.inFlight.decrementAndGet();
+                }
+                finished.whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        System.err.println("Error handling client: " + ex.getMessage());
+                    }
+                    done.run();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            connection.inFlight.decrementAndGet();
+            System.err.println("Too many commands waiting, rejecting " + command);
+            reply.accept(NetworkCommands.ERROR);
+            done.run();
+        }
+    }
 
-            if (decodedMessage.verify(secret)) {
-                System.out.println("Authenticated command: " + decodedMessage.getCommand());
-                processRemoteCommand(decodedMessage.getCommand(), output, securityEnabled, secret);
+    /**
+     * Queues a frame for the connection in its protocol version, safe to call from any thread. Frames
+     * for a connection that has gone away are dropped, the proxy reconnects or falls back to pinging
+     * on its own.
+     */
+    private void send(Connection connection, int requestId, String command) {
+        if (!connection.channel.isOpen()) {
+            System.out.println("Proxy is no longer listening for " + command);
+            return;
+        }
+        // heartbeats go back and forth every few seconds on every session, not worth a console line
+        if (!NetworkCommands.PONG.equals(command)) {
+            System.out.println("Sending > " + command);
+        }
+        synchronized (connection.writeLock) {
+            if (connection.encoder != null) {
+                connection.ensureWritable(connection.encoder.maxFrameLength(null));
+                connection.encoder.encode(connection.output, command, requestId, null);
             } else {
-                System.out.println("Authentication failed! Rejecting command.");
+                String message = connection.session ? NetworkCommands.withRequestId(requestId, command) : command;
+                byte[] encoded = NetworkCommands.encodeData(message, connection.securityEnabled, connection.secret);
+                connection.ensureWritable(encoded.length);
+                connection.output.put(encoded);
+            }
+        }
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    private void closeWhenFlushed(Connection connection) {
+        connection.closeWhenFlushed = true;
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    private void flushPendingWrites() throws IOException {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            if (!connection.channel.isOpen()) {
+                continue;
             }
-        } catch (RuntimeException | IOException e) {
-            System.err.println("Error handling client: " + e.getMessage());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
             try {
-                Thread.sleep(50);  // Short delay before closing
-                clientSocket.close();
-                System.out.println("Client socket closed successfully");
+                write(connection);
             } catch (IOException e) {
-                System.err.println("Error closing client socket: " + e.getMessage());
-            } catch (InterruptedException e) {
-                System.out.println("InterruptedException: " + e.getMessage());
-                Thread.currentThread().interrupt(); // Keep the interrupt going
+                System.err.println("Error writing to client: " + e.getMessage());
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the output as the socket takes, the rest waits for the socket to be writable.
+     */
+    private void write(Connection connection) throws IOException {
+        synchronized (connection.writeLock) {
+            ByteBuffer output = connection.output;
+            output.flip();
+            connection.channel.write(output);
+            boolean unwritten = output.hasRemaining();
+            output.compact();
+            if (unwritten) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
             }
         }
+        if (connection.key.isValid()) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (connection.closeWhenFlushed) {
+            close(connection);
+        }
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections) {
+            if (connection.session && now - connection.lastRead > SESSION_TIMEOUT) {
+                System.out.println("No heartbeat from the proxy, closing control session.");
+                close(connection);
+            } else if (!connection.session && !connection.commandReceived && now - connection.connectedAt > CLIENT_TIMEOUT) {
+                System.out.println("Client " + connection.address + " did not send a command in time.");
+                close(connection);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connections.remove(connection)) {
+            return;
+        }
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        System.out.println(connection.session ? "Control session closed with " + connection.address : "Client socket closed successfully");
     }
 
-    private void processRemoteCommand(String command, OutputStream output, Boolean securityEnabled, String secret) {
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a command from the proxy.
+     *
+     * @param command The command to run.
+     * @param requestedServer The server the command is for, or null if it does not name one.
+     * @param reply Sends a frame back to the proxy.
+     * @return Completes once the last answer has been sent, a boot keeps answering after the worker is done.
+     */
+    private CompletableFuture<Void> processRemoteCommand(String command, String requestedServer, Consumer<String> reply) {
+        if (NetworkCommands.SHUTDOWN_BOOT_LISTENER.equals(command)) {
+            reply.accept(NetworkCommands.SUCCESS);
+            stopAll();
+            return CompletableFuture.completedFuture(null);
+        }
+        String serverName = resolveServer(requestedServer);
+        if (serverName == null) {
+            System.err.println("No server " + (requestedServer == null ? "given" : "named " + requestedServer)
+                    + " for " + command + ", servers are " + String.join(", ", config.getServerNames()));
+            reply.accept(NetworkCommands.ERROR);
+            return CompletableFuture.completedFuture(null);
+        }
+        ServerSupervisor supervisor = supervisor(serverName);
         switch (command) {
             case NetworkCommands.BOOT:
-                respond(output, securityEnabled, secret, NetworkCommands.ACKNOWLEDGED);
-                if (startBackendServer()) {
-                    respond(output, securityEnabled, secret, NetworkCommands.COMPLETED);
-                    stopAll();
+                return boot(serverName, supervisor, reply);
+            case NetworkCommands.STATUS:
+                reply.accept(serverStatus(serverName));
+                break;
+            case NetworkCommands.STOP:
+                if (supervisor != null) {
+                    reply.accept(supervisor.stop() ? NetworkCommands.SUCCESS : NetworkCommands.FAILED);
+                    break;
+                }
+                String stopCommandPath = config.serverPath(serverName, "stopCommand");
+                String stopCommand = config.getString(stopCommandPath);
+                if (stopCommand == null) {
+                    System.err.println("Received stop request but \"" + stopCommandPath + "\" is not set.");
+                    reply.accept(NetworkCommands.ERROR);
+                    break;
+                }
+                CommandRunner.CommandResult stopResult = CommandRunner.runCommand(config.getString(config.serverPath(serverName, "workingDirectory")),
+                        stopCommand, config.getBoolean(config.serverPath(serverName, "preserveQuotes")));
+                if (stopResult.failedToStart()) {
+                    System.err.println(stopResult.getErrorMessage());
+                    reply.accept(NetworkCommands.FAILED);
                 } else {
-                    respond(output, securityEnabled, secret, NetworkCommands.FAILED);
+                    reply.accept(NetworkCommands.SUCCESS);
                 }
                 break;
-            case NetworkCommands.SHUTDOWN_BOOT_LISTENER:
-                respond(output, securityEnabled, secret, NetworkCommands.SUCCESS);
-                stopAll();
-                break;
             default:
-                respond(output, securityEnabled, secret, NetworkCommands.ERROR);
+                reply.accept(NetworkCommands.ERROR);
         }
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void respond(OutputStream output, Boolean securityEnabled, String secret, String command) {
-        System.out.println("Sending > " + command);
-        byte[] encoded = NetworkCommands.encodeData(command, securityEnabled, secret);
+    /**
+     * Starts a server and reports its progress until the game port is listening. The wait runs on the
+     * scheduler, so the worker is free for other commands while the server boots.
+     *
+     * @return Completes once READY or FAILED has been sent.
+     */
+    private CompletableFuture<Void> boot(String serverName, ServerSupervisor supervisor, Consumer<String> reply) {
+        reply.accept(NetworkCommands.ACKNOWLEDGED);
+        Integer gamePort = config.getInt(config.serverPath(serverName, "port"));
+        if (supervisor != null && !supervisor.isRunning() && gamePort != null && isPortListening(gamePort)) {
+            // started by someone else, an agent that was restarted for example
+            System.out.println("Backend server " + serverName + " is already accepting connections on port " + gamePort);
+            reply.accept(NetworkCommands.READY);
+            return CompletableFuture.completedFuture(null);
+        }
+        CommandRunner.CommandResult result = supervisor != null ? supervisor.start() : launcher.launch(serverName);
+        if (result == null) {
+            reply.accept(NetworkCommands.FAILED);
+            return CompletableFuture.completedFuture(null);
+        }
+        reply.accept(NetworkCommands.COMPLETED);
 
-        try {
-            output.write(encoded);
-            output.flush();
+        if (gamePort == null) {
+            // Nothing to watch, the proxy has to find out by pinging
+            if (exitsAfterBoot()) {
+                stopAll();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Keep the connection open and report progress until the game port is listening
+        return watchReadiness(serverName, result, gamePort, reply).handle((ready, ex) -> {
+            boolean isReady = ex == null && ready;
+            reply.accept(isReady ? NetworkCommands.READY : NetworkCommands.FAILED);
+            // an agent stays up to supervise the server
+            if (exitsAfterBoot() && (isReady || !result.isTerminated())) {
+                stopAll();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Finds the server a command is for.
+     *
+     * @param serverName The name the command gave, or null.
+     * @return The name of a configured server, or null if there is no such server or the command has
+     *         to name one because there are several.
+     */
+    private String resolveServer(String serverName) {
+        List<String> serverNames = config.getServerNames();
+        if (serverName == null) {
+            if (serverNames.size() == 1) {
+                return serverNames.get(0);
+            }
+            return serverNames.contains(BackendConfig.DEFAULT_SERVER) ? BackendConfig.DEFAULT_SERVER : null;
+        }
+        return serverNames.contains(serverName) ? serverName : null;
+    }
+
+    /**
+     * @return The supervisor of the server, created on first use so servers added by a reload are
+     *         supervised as well, or null when not in agent mode.
+     */
+    private ServerSupervisor supervisor(String serverName) {
+        if (!agentMode) {
+            return null;
+        }
+        return supervisors.computeIfAbsent(serverName,
+                name -> new ServerSupervisor(config, name, scheduler, () -> launcher.launch(name)));
+    }
+
+    /**
+     * @return true if the listener stops once it started a server, it has to keep running for an agent
+     *         or when there are other servers left to start.
+     */
+    private boolean exitsAfterBoot() {
+        return !agentMode && config.getServerNames().size() == 1;
+    }
+
+    /**
+     * @return RUNNING once the game port accepts connections, STOPPED if the server is known to be down,
+     *         UNKNOWN otherwise, while an agent waits for its server to finish starting for example.
+     */
+    private String serverStatus(String serverName) {
+        Integer gamePort = config.getInt(config.serverPath(serverName, "port"));
+        if (gamePort != null && isPortListening(gamePort)) {
+            return NetworkCommands.RUNNING;
+        }
+        ServerSupervisor supervisor = supervisor(serverName);
+        if (supervisor != null && supervisor.isRunning()) {
+            return gamePort == null ? NetworkCommands.RUNNING : NetworkCommands.UNKNOWN;
+        }
+        if (supervisor != null || gamePort != null) {
+            return NetworkCommands.STOPPED;
+        }
+        return NetworkCommands.UNKNOWN;
+    }
+
+    /**
+     * Watches a launched backend server until its game port accepts connections.
+     *
+     * @param serverName The server that was launched.
+     * @param result The launched start command.
+     * @param gamePort Port the backend server listens on for players.
+     * @param progress Receives progress frames to forward to the proxy.
+     * @return A CompletableFuture that completes with true once the port is listening, false if the
+     *         process failed or the server did not come up in time.
+     */
+    private CompletableFuture<Boolean> watchReadiness(String serverName, CommandRunner.CommandResult result, int gamePort, Consumer<String> progress) {
+        CompletableFuture<Boolean> ready = new CompletableFuture<>();
+        int readyTimeout = Optional.ofNullable(config.getInt(config.serverPath(serverName, "readyTimeout"))).orElse(DEFAULT_READY_TIMEOUT);
+        long deadline = System.currentTimeMillis() + readyTimeout * 1000L;
+        AtomicBoolean reportedAlive = new AtomicBoolean(false);
+        AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+
+        System.out.println("Waiting up to " + readyTimeout + " seconds for port " + gamePort + " of " + serverName + " to accept connections.");
+        ScheduledFuture<?> check = scheduler.scheduleWithFixedDelay(() -> {
+            if (result.isTerminated() && result.getExitCode() != 0) {
+                System.err.println("Backend server " + serverName + " exited with code " + result.getExitCode());
+                ready.complete(false);
+                return;
+            }
+            if (!result.isTerminated() && reportedAlive.compareAndSet(false, true)) {
+                progress.accept(NetworkCommands.PROCESS_ALIVE);
+                lastProgress.set(System.currentTimeMillis());
+            }
+            if (isPortListening(gamePort)) {
+                System.out.println("Backend server " + serverName + " is accepting connections on port " + gamePort);
+                progress.accept(NetworkCommands.PORT_LISTENING);
+                ready.complete(true);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now > deadline) {
+                System.err.println("Backend server " + serverName + " did not start listening within " + readyTimeout + " seconds.");
+                ready.complete(false);
+                return;
+            }
+            if (now - lastProgress.get() >= PROGRESS_INTERVAL) {
+                progress.accept(NetworkCommands.PROGRESS);
+                lastProgress.set(now);
+            }
+        }, READY_CHECK_INTERVAL, READY_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+        return ready.whenComplete((isReady, ex) -> check.cancel(false));
+    }
+
+    private static boolean isPortListening(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), PORT_CONNECT_TIMEOUT);
+            return true;
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            return false;
         }
     }
 
-    private void processCliCommand(String command) {
+    private void processCliCommand(String line) {
+        String[] parts = line.split("\\s+", 2);
+        String command = parts[0];
+        String argument = parts.length > 1 ? parts[1] : null;
         switch (command) {
             case "help":
                 System.out.println("Commands:");
-                System.out.println("  help   - this message");
-                System.out.println("  start  - start the backend server");
-                System.out.println("  stop   - stop the boot listener");
-                System.out.println("  reload - reload the config.yml file (port is not hot reloadable)");
+                System.out.println("  help             - this message");
+                System.out.println("  start [server]   - start a backend server, or all of them");
+                System.out.println("  stop             - stop the boot listener, and the backend servers in agent mode");
+                System.out.println("  status [server]  - show if the backend servers are running");
+                System.out.println("  console [server] <command> - type a command into a backend server console (agent mode),");
+                System.out.println("                     the server can be left out when there is only one");
+                System.out.println("  reload           - reload the config.yml file (port and mode are not hot reloadable)");
+                break;
+            case "status":
+                for (String serverName : cliServers(argument)) {
+                    System.out.println("Backend server " + serverName + " status: " + serverStatus(serverName));
+                }
                 break;
             case "reload":
                 config.reload();
@@ -251,58 +963,143 @@ public class BootListener {
                 stopAll();
                 break;
             case "start":
-                System.out.println("Starting backend server...");
-                if (startBackendServer()) {
+                List<String> serverNames = cliServers(argument);
+                boolean started = false;
+                for (String serverName : serverNames) {
+                    System.out.println("Starting backend server " + serverName + "...");
+                    ServerSupervisor supervisor = supervisor(serverName);
+                    CommandRunner.CommandResult result = supervisor != null ? supervisor.start() : launcher.launch(serverName);
+                    if (result == null) {
+                        System.out.println("Failed to start backend server " + serverName + ".");
+                    } else {
+                        started = true;
+                    }
+                }
+                if (started && !agentMode && (exitsAfterBoot() || argument == null)) {
                     System.out.println("Command ran successfully.");
                     stopAll();
-                } else {
-                    System.out.println("Failed to start backend server.");
                 }
                 break;
+            case "console":
+                consoleCommand(argument);
+                break;
             default:
                 System.out.println("Unknown command.");
         }
     }
 
+    /**
+     * @param argument A server name, or null for all servers.
+     * @return The servers a cli command is for, empty after reporting an unknown name.
+     */
+    private List<String> cliServers(String argument) {
+        List<String> serverNames = config.getServerNames();
+        if (argument == null) {
+            return serverNames;
+        }
+        if (!serverNames.contains(argument)) {
+            System.out.println("Unknown server " + argument + ", servers are " + String.join(", ", serverNames));
+            return List.of();
+        }
+        return List.of(argument);
+    }
+
+    private void consoleCommand(String argument) {
+        if (argument == null) {
+            System.out.println("Usage: console [server] <command>");
+            return;
+        }
+        String serverName = resolveServer(null);
+        String consoleLine = argument;
+        String[] parts = argument.split("\\s+", 2);
+        if (parts.length > 1 && config.getServerNames().contains(parts[0])) {
+            serverName = parts[0];
+            consoleLine = parts[1];
+        }
+        if (serverName == null) {
+            System.out.println("Name the server to send the command to, servers are " + String.join(", ", config.getServerNames()));
+            return;
+        }
+        ServerSupervisor supervisor = supervisor(serverName);
+        if (supervisor == null || !supervisor.sendCommand(consoleLine)) {
+            System.out.println("The backend server console is only available in agent mode while the server is running.");
+        }
+    }
+
     private void stopAll() {
         // doing this on a thread so that we don't
         // interrupt this function from finishing
         new Thread(() -> {
+            stopSupervisedServers();
             running = false;
 
-            // Close server socket
             System.out.println("Shutting down server listener...");
-            try {
-                if (serverSocket != null && !serverSocket.isClosed()) {
-                    serverSocket.close();
-                    System.out.println("Server socket closed.");
-                }
-            } catch (IOException e) {
-                System.err.println("Error closing server socket: " + e.getMessage());
+            // the network thread closes the server socket and all connections on its way out
+            if (selector != null) {
+                selector.wakeup();
             }
             System.out.println("Stopping client threads");
             // stop client threads
-            clientHandlers.shutdownNow();
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+            scheduler.shutdownNow();
 
-            cliThread.interrupt(); // Interrupt CLI thread (if blocked)
-            socketThread.interrupt(); // Interrupt Socket thread (if blocked)
+            if (cliThread != null) {
+                cliThread.interrupt(); // Interrupt CLI thread (if blocked)
+            }
         }).start();
     }
 
-    private boolean startBackendServer() {
-        String command = config.getString("server.startCommand");
+    /**
+     * Stops the servers an agent started and waits for them to exit, so none is left running unsupervised.
+     */
+    private void stopSupervisedServers() {
+        Map<String, Process> stopping = new HashMap<>();
+        supervisors.forEach((serverName, supervisor) -> supervisor.getProcess().ifPresent(process -> {
+            System.out.println("Stopping backend server " + serverName + "...");
+            if (supervisor.stop()) {
+                stopping.put(serverName, process);
+            } else {
+                System.err.println("Failed to stop backend server " + serverName + ", it keeps running without supervision.");
+            }
+        }));
+
+        long deadline = System.currentTimeMillis() + AGENT_STOP_TIMEOUT * 1000L;
+        for (Map.Entry<String, Process> entry : stopping.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!entry.getValue().waitFor(remaining, TimeUnit.MILLISECONDS)) {
+                    System.err.println("Backend server " + entry.getKey() + " did not stop within " + AGENT_STOP_TIMEOUT
+                            + " seconds, it keeps running without supervision.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Keep the interrupt going
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the configured start command of a server.
+     *
+     * @return The launched command, or null if it could not be started.
+     */
+    private CommandRunner.CommandResult startBackendServer(String serverName) {
+        String startCommandPath = config.serverPath(serverName, "startCommand");
+        String command = config.getString(startCommandPath);
         if (command == null) {
-            System.err.println("Error reading start command. Check config for required setting \"server.startCommand\".");
-            return false;
+            System.err.println("Error reading start command. Check config for required setting \"" + startCommandPath + "\".");
+            return null;
         }
 
-        String workingDirectory = config.getString("server.workingDirectory");
-        Boolean preserveQuotes = config.getBoolean("server.preserveQuotes");
+        String workingDirectory = config.getString(config.serverPath(serverName, "workingDirectory"));
+        Boolean preserveQuotes = config.getBoolean(config.serverPath(serverName, "preserveQuotes"));
 
         CommandRunner.CommandResult commandResult = CommandRunner.runCommand(workingDirectory, command, preserveQuotes);
         if (commandResult.failedToStart()) {
             System.err.println(commandResult.getErrorMessage());
-            return false;
+            return null;
         }
 
         if (commandResult.isTerminated()) {
@@ -312,6 +1109,6 @@ public class BootListener {
             }
         }
 
-        return true;
+        return commandResult;
     }
 }
\ No newline at end of file
@@ -5,8 +5,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.regex.Pattern;
 
 public class CommandRunner {
+    // Split on whitespace, ignoring whitespace inside quotes (single or double)
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("\\s+(?=(?:[^'\"]*['\"][^'\"]*['\"])*[^'\"]*$)");
+    private static final Pattern SURROUNDING_QUOTES = Pattern.compile("^\"|\"$|^'|'$");
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
 
     public static class CommandResult {
         private final boolean started;
@@ -43,6 +48,20 @@ public class CommandRunner {
             return "";
         }
 
+        /**
+         * @return The spawned process, or null if it failed to start.
+         */
+        public Process getProcess() {
+            return process;
+        }
+
+        /**
+         * @return PID of the spawned process, or -1 if it failed to start.
+         */
+        public long getPid() {
+            return process == null ? -1 : process.pid();
+        }
+
         public int getExitCode() {
             assert !process.isAlive() : "Must check that CommandResult.isTerminated() before calling getExitCode.";
             return process.exitValue();
@@ -53,7 +72,7 @@ public class CommandRunner {
             return "CommandResult{" +
                     "started=" + started +
                     ", errorMessage='" + errorMessage + '\'' +
-                    ", processId=" + process.pid() +
+                    ", processId=" + getPid() +
                     ", path=" + path +
                     ", command=" + command +
                     '}';
@@ -92,23 +111,28 @@ public class CommandRunner {
         return new CommandResult(started, errorMsg, path, commandParsed, process);
     }
 
-    private static ProcessBuilder getProcessBuilder(String path, String command, Boolean preserveQuotes) {
-        ProcessBuilder processBuilder;
-        String os = System.getProperty("os.name").toLowerCase();
-        // Split on whitespace, ignoring whitespace inside quotes (single or double)
-        List<String> tokenCommand = new ArrayList<>(List.of(command.split("\\s+(?=(?:[^'\"]*['\"][^'\"]*['\"])*[^'\"]*$)")));
+    /**
+     * Splits a command into the program and its arguments.
+     *
+     * @param preserveQuotes Whether to keep quotes around arguments, null keeps them only on Windows.
+     */
+    public static List<String> tokenize(String command, Boolean preserveQuotes) {
+        List<String> tokenCommand = new ArrayList<>(List.of(TOKEN_SEPARATOR.split(command)));
 
         // Remove surrounding quotes if linux and keep if windows
         // new setting PRESERVE_QUOTES, that ignores the OS check
-        if ((preserveQuotes == null && !os.contains("win")) || (preserveQuotes != null && !preserveQuotes)) {
+        if ((preserveQuotes == null && !WINDOWS) || (preserveQuotes != null && !preserveQuotes)) {
             ListIterator<String> iterator = tokenCommand.listIterator();
             while (iterator.hasNext()) {
                 String word = iterator.next();
-                iterator.set(word.replaceAll("^\"|\"$|^'|'$", ""));
+                iterator.set(SURROUNDING_QUOTES.matcher(word).replaceAll(""));
             }
         }
+        return tokenCommand;
+    }
 
-        processBuilder = new ProcessBuilder(tokenCommand);
+    private static ProcessBuilder getProcessBuilder(String path, String command, Boolean preserveQuotes) {
+        ProcessBuilder processBuilder = new ProcessBuilder(tokenize(command, preserveQuotes));
 
         // setting the directory
         if (path != null) {
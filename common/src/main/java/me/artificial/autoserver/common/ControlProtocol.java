@@ -0,0 +1,436 @@
+package me.artificial.autoserver.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Binary control protocol, communication version 3.
+ * <p>
+ * Frame format:
+ * <pre>
+ *  [1-byte version = 3][varint body length]
+ *  body: [1-byte opcode][1-byte flags][varint request id][8-byte timestamp][8-byte nonce]
+ *        [varint server name length][server name, UTF-8][32-byte HMAC-SHA256, if signed]
+ * </pre>
+ * Commands are single-byte opcodes instead of their names. The request id replaces the text prefix of
+ * {@link NetworkCommands#withRequestId(int, String)} and is 0 outside a control session, the server name
+ * replaces {@link NetworkCommands#withServer(String, String)}. The MAC covers every byte of the frame
+ * before it. Timestamp and nonce let the Boot Listener turn away frames that are replayed, see
+ * {@link ReplayGuard}.
+ * <p>
+ * A version 2 frame starts with its length, whose first byte is always 0 since frames are at most
+ * {@link #MAX_FRAME_LENGTH} bytes, so the Boot Listener tells both versions apart by the first byte.
+ */
+public final class ControlProtocol {
+    public static final byte VERSION = 3;
+    public static final int MAC_LENGTH = HmacSigner.MAC_LENGTH;
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+    /** Frames with a timestamp further than this from the clock of the Boot Listener are turned away */
+    public static final long MAX_CLOCK_SKEW_MS = 30_000;
+
+    private static final int FLAG_SIGNED = 1;
+    private static final byte[] NO_SERVER_NAME = new byte[0];
+    // opcodes are the index, only ever append to this list
+    private static final String[] COMMANDS = {
+            null,
+            NetworkCommands.BOOT,
+            NetworkCommands.SHUTDOWN_BOOT_LISTENER,
+            NetworkCommands.SESSION,
+            NetworkCommands.PING,
+            NetworkCommands.STATUS,
+            NetworkCommands.STOP,
+            NetworkCommands.ACKNOWLEDGED,
+            NetworkCommands.COMPLETED,
+            NetworkCommands.PROGRESS,
+            NetworkCommands.PROCESS_ALIVE,
+            NetworkCommands.PORT_LISTENING,
+            NetworkCommands.READY,
+            NetworkCommands.FAILED,
+            NetworkCommands.SUCCESS,
+            NetworkCommands.ERROR,
+            NetworkCommands.SESSION_ACCEPTED,
+            NetworkCommands.PONG,
+            NetworkCommands.RUNNING,
+            NetworkCommands.STOPPED,
+            NetworkCommands.UNKNOWN,
+    };
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        for (int opcode = 1; opcode < COMMANDS.length; opcode++) {
+            OPCODES.put(COMMANDS[opcode], opcode);
+        }
+    }
+
+    private ControlProtocol() {}
+
+    /**
+     * @return The opcode of one of the {@link NetworkCommands} constants.
+     * @throws IllegalArgumentException if the command has no opcode.
+     */
+    public static int opcode(String command) {
+        Integer opcode = OPCODES.get(command);
+        if (opcode == null) {
+            throw new IllegalArgumentException("No opcode for command " + command);
+        }
+        return opcode;
+    }
+
+    /**
+     * @return The {@link NetworkCommands} constant of an opcode, or null if it is unknown.
+     */
+    public static String command(int opcode) {
+        return opcode > 0 && opcode < COMMANDS.length ? COMMANDS[opcode] : null;
+    }
+
+    /**
+     * Works out the length of the frame at the position of the buffer without moving it.
+     *
+     * @return The length of the whole frame including its header, or -1 if the header is not complete yet.
+     * @throws ProtocolException if the buffer does not hold a version 3 frame or it is too long.
+     */
+    public static int frameLength(ByteBuffer buffer) throws ProtocolException {
+        int position = buffer.position();
+        if (buffer.remaining() < 1) {
+            return -1;
+        }
+        if (buffer.get(position) != VERSION) {
+            throw new ProtocolException("Unsupported protocol version " + buffer.get(position));
+        }
+        int bodyLength = 0;
+        for (int i = 0; i < 5; i++) {
+            if (buffer.remaining() < 2 + i) {
+                return -1;
+            }
+            byte b = buffer.get(position + 1 + i);
+            bodyLength |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                int frameLength = 2 + i + bodyLength;
+                if (bodyLength < 0 || frameLength > MAX_FRAME_LENGTH) {
+                    throw new ProtocolException("Invalid frame length " + bodyLength);
+                }
+                return frameLength;
+            }
+        }
+        throw new ProtocolException("Invalid frame length");
+    }
+
+    /**
+     * A decoded frame. Meant to be reused for every frame read from a connection.
+     */
+    public static final class Frame {
+        private int opcode;
+        private int requestId;
+        private long timestamp;
+        private long nonce;
+        private boolean signed;
+        private String serverName;
+
+        /**
+         * @return The {@link NetworkCommands} constant of the frame, or null for an opcode this version does not know.
+         */
+        public String getCommand() {
+            return command(opcode);
+        }
+
+        public int getOpcode() {
+            return opcode;
+        }
+
+        public int getRequestId() {
+            return requestId;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getNonce() {
+            return nonce;
+        }
+
+        public boolean isSigned() {
+            return signed;
+        }
+
+        /**
+         * @return Name of the server the command is for, or null if it does not name one.
+         */
+        public String getServerName() {
+            return serverName;
+        }
+
+        @Override
+        public String toString() {
+            return "Frame{command=" + getCommand() + ", requestId=" + requestId + ", serverName=" + serverName + ", signed=" + signed + "}";
+        }
+    }
+
+    /**
+     * Encodes or decodes frames for one direction of one connection. The buffers are reused for every
+     * frame, so a codec must not be shared between threads.
+     */
+    public static final class Codec {
+        private final HmacSigner signer;
+        private final byte[] expectedMac = new byte[MAC_LENGTH];
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+        private String lastServerName;
+        private byte[] lastServerNameBytes = NO_SERVER_NAME;
+
+        /**
+         * @param secret Shared secret to sign and verify frames with, or null when security is disabled.
+         */
+        public Codec(String secret) {
+            this.signer = secret == null ? null : HmacSigner.forSecret(secret);
+        }
+
+        /**
+         * @return true if frames are signed and unsigned frames are turned away.
+         */
+        public boolean isSigned() {
+            return signer != null;
+        }
+
+        /**
+         * @return The most bytes a frame for this server name takes, to size buffers passed to
+         *         {@link #encode(ByteBuffer, String, int, String)}.
+         */
+        public int maxFrameLength(String serverName) {
+            return 2 + 5 + 5 + 16 + 5 + serverNameBytes(serverName).length + MAC_LENGTH;
+        }
+
+        /**
+         * Appends a frame to a heap buffer.
+         *
+         * @param out Buffer with room for {@link #maxFrameLength(String)} bytes.
+         * @param command One of the {@link NetworkCommands} constants.
+         * @param requestId Id of the request the frame belongs to, 0 outside a control session.
+         * @param serverName Name of the server the command is for, or null.
+         */
+        public void encode(ByteBuffer out, String command, int requestId, String serverName) {
+            byte[] name = serverNameBytes(serverName);
+            int bodyLength = 2 + varintLength(requestId) + 16 + varintLength(name.length) + name.length + (signer != null ? MAC_LENGTH : 0);
+            int start = out.position();
+            out.put(VERSION);
+            putVarint(out, bodyLength);
+            out.put((byte) opcode(command));
+            out.put((byte) (signer != null ? FLAG_SIGNED : 0));
+            putVarint(out, requestId);
+            out.putLong(System.currentTimeMillis());
+            out.putLong(ThreadLocalRandom.current().nextLong());
+            putVarint(out, name.length);
+            out.put(name);
+            if (signer != null) {
+                // signed in place, straight behind the bytes it covers
+                int macOffset = out.arrayOffset() + out.position();
+                signer.sign(out.array(), out.arrayOffset() + start, out.position() - start, out.array(), macOffset);
+                out.position(out.position() + MAC_LENGTH);
+            }
+        }
+
+        /**
+         * Reads one frame starting at the position of the buffer and moves past it.
+         *
+         * @param in Heap buffer holding at least the whole frame, see {@link #frameLength(ByteBuffer)}.
+         * @param into Receives the decoded frame.
+         * @throws ProtocolException if the frame is malformed, unsigned while security is enabled, or its MAC does not match.
+         */
+        public void decode(ByteBuffer in, Frame into) throws ProtocolException {
+            int length = frameLength(in);
+            if (length < 0 || in.remaining() < length) {
+                throw new ProtocolException("Incomplete frame");
+            }
+            int start = in.position();
+            int end = start + length;
+            try {
+                in.get(); // version
+                getVarint(in);
+                into.opcode = in.get() & 0xFF;
+                into.signed = (in.get() & FLAG_SIGNED) != 0;
+                into.requestId = getVarint(in);
+                into.timestamp = in.getLong();
+                into.nonce = in.getLong();
+                int nameLength = getVarint(in);
+                if (nameLength < 0 || nameLength > end - in.position()) {
+                    throw new ProtocolException("Invalid server name length " + nameLength);
+                }
+                into.serverName = readServerName(in, nameLength);
+
+                int macStart = in.position();
+                if (into.signed) {
+                    if (end - macStart != MAC_LENGTH) {
+                        throw new ProtocolException("Malformed frame");
+                    }
+                    if (signer != null && !signer.verify(in.array(), in.arrayOffset() + start, macStart - start,
+                            expectedMac, in.array(), in.arrayOffset() + macStart)) {
+                        throw new ProtocolException("Invalid signature");
+                    }
+                } else if (signer != null) {
+                    throw new ProtocolException("Unsigned frame while security is enabled");
+                } else if (macStart != end) {
+                    throw new ProtocolException("Malformed frame");
+                }
+            } catch (RuntimeException e) {
+                throw new ProtocolException("Malformed frame: " + e.getMessage());
+            } finally {
+                in.position(end);
+            }
+        }
+
+        /**
+         * Writes a frame to a blocking stream.
+         */
+        public void writeFrame(OutputStream out, String command, int requestId, String serverName) throws IOException {
+            ensureCapacity(maxFrameLength(serverName));
+            buffer.clear();
+            encode(buffer, command, requestId, serverName);
+            out.write(buffer.array(), 0, buffer.position());
+            out.flush();
+        }
+
+        /**
+         * Reads a frame from a blocking stream.
+         *
+         * @throws EOFException if the stream ends before a whole frame was read.
+         */
+        public void readFrame(InputStream in, Frame into) throws IOException {
+            buffer.clear();
+            buffer.put(readByte(in));
+            int length;
+            while ((length = frameLength(buffer.flip())) < 0) {
+                buffer.position(buffer.limit()).limit(buffer.capacity());
+                buffer.put(readByte(in));
+            }
+            int read = buffer.limit();
+            ensureCapacity(length);
+            while (read < length) {
+                int n = in.read(buffer.array(), read, length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            buffer.position(0).limit(length);
+            decode(buffer, into);
+        }
+
+        private byte[] serverNameBytes(String serverName) {
+            if (serverName == null) {
+                return NO_SERVER_NAME;
+            }
+            if (!serverName.equals(lastServerName)) {
+                lastServerName = serverName;
+                lastServerNameBytes = serverName.getBytes(StandardCharsets.UTF_8);
+            }
+            return lastServerNameBytes;
+        }
+
+        private String readServerName(ByteBuffer in, int length) {
+            if (length == 0) {
+                return null;
+            }
+            // the same name arrives again and again, only build a new string when it changes
+            int start = in.arrayOffset() + in.position();
+            in.position(in.position() + length);
+            if (lastServerName != null && lastServerNameBytes.length == length
+                    && Arrays.equals(lastServerNameBytes, 0, length, in.array(), start, start + length)) {
+                return lastServerName;
+            }
+            lastServerNameBytes = Arrays.copyOfRange(in.array(), start, start + length);
+            lastServerName = new String(lastServerNameBytes, StandardCharsets.UTF_8);
+            return lastServerName;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (buffer.capacity() < capacity) {
+                // keeps what was read so far, the header of a frame being read for example
+                buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), capacity));
+            }
+        }
+
+        private static byte readByte(InputStream in) throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return (byte) b;
+        }
+    }
+
+    /**
+     * Remembers the nonces of recent signed frames to turn away frames that are sent again by someone
+     * who recorded them. Frames older than {@link #MAX_CLOCK_SKEW_MS} are turned away by their timestamp,
+     * so only that window has to be remembered. Not thread safe.
+     */
+    public static final class ReplayGuard {
+        private final long[] nonces;
+        private final long[] timestamps;
+        private int next = 0;
+
+        /**
+         * @param capacity Number of nonces remembered, when more frames than this arrive within the window
+         *                 the oldest are forgotten early.
+         */
+        public ReplayGuard(int capacity) {
+            nonces = new long[capacity];
+            timestamps = new long[capacity];
+        }
+
+        /**
+         * @return true if the frame is recent and has not been seen before.
+         */
+        public boolean accept(long timestamp, long nonce) {
+            long now = System.currentTimeMillis();
+            if (Math.abs(now - timestamp) > MAX_CLOCK_SKEW_MS) {
+                return false;
+            }
+            for (int i = 0; i < nonces.length; i++) {
+                if (nonces[i] == nonce && timestamps[i] == timestamp) {
+                    return false;
+                }
+            }
+            nonces[next] = nonce;
+            timestamps[next] = timestamp;
+            next = (next + 1) % nonces.length;
+            return true;
+        }
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        for (int i = 0; i < 5; i++) {
+            byte b = in.get();
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Invalid varint");
+    }
+}
@@ -1,20 +1,24 @@
 package me.artificial.autoserver.common;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
+/**
+ * Base64 signatures of communication version 2, see {@link HmacSigner}.
+ */
 public class HMAC {
     public static String signMessage(String message, String secret) throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        SecretKeySpec secretKeySpec = new SecretKeySpec(secret.getBytes(), "HmacSHA256");
-        mac.init(secretKeySpec);
-        byte[] hmacBytes = mac.doFinal(message.getBytes());
+        byte[] hmacBytes = HmacSigner.forSecret(secret).sign(message.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(hmacBytes);
     }
 
     public static boolean verifyMessage(String message, String receivedSignature, String secret) throws Exception {
-        String expectedSignature = signMessage(message, secret);
-        return expectedSignature.equals(receivedSignature);
+        byte[] received;
+        try {
+            received = Base64.getDecoder().decode(receivedSignature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return HmacSigner.forSecret(secret).verify(message.getBytes(StandardCharsets.UTF_8), received);
     }
 }
@@ -0,0 +1,93 @@
+package me.artificial.autoserver.common;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Signs and verifies messages with HMAC-SHA256 under one secret.
+ * <p>
+ * Looking up and initializing a {@link Mac} costs far more than signing a short command, so every thread
+ * keeps one initialized {@link Mac} per signer and reuses it. Signatures are compared as raw bytes in
+ * constant time. Use {@link #forSecret(String)} to share the signer of the secret in use.
+ */
+public final class HmacSigner {
+    public static final int MAC_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static volatile HmacSigner current;
+
+    private final String secret;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    public HmacSigner(String secret) {
+        this.secret = secret;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Returns the signer of the secret, reusing the one from the last call while the secret stays the same.
+     */
+    public static HmacSigner forSecret(String secret) {
+        HmacSigner signer = current;
+        if (signer == null || !signer.secret.equals(secret)) {
+            signer = new HmacSigner(secret);
+            current = signer;
+        }
+        return signer;
+    }
+
+    /**
+     * Signs part of an array and writes the {@link #MAC_LENGTH} byte signature to {@code out}.
+     */
+    public void sign(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        Mac instance = mac.get();
+        instance.update(data, offset, length);
+        try {
+            instance.doFinal(out, outOffset);
+        } catch (ShortBufferException e) {
+            throw new IllegalArgumentException("No room for the signature", e);
+        }
+    }
+
+    public byte[] sign(byte[] data) {
+        return mac.get().doFinal(data);
+    }
+
+    /**
+     * Checks a signature in constant time.
+     *
+     * @param expected Scratch array of at least {@link #MAC_LENGTH} bytes that receives the expected signature.
+     * @param signature Array holding the received signature at {@code signatureOffset}.
+     * @return true if the signature matches the data.
+     */
+    public boolean verify(byte[] data, int offset, int length, byte[] expected, byte[] signature, int signatureOffset) {
+        sign(data, offset, length, expected, 0);
+        int difference = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            difference |= expected[i] ^ signature[signatureOffset + i];
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Checks a signature in constant time.
+     */
+    public boolean verify(byte[] data, byte[] signature) {
+        return MessageDigest.isEqual(sign(data), signature);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+}
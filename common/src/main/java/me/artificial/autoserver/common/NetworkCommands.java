@@ -2,6 +2,7 @@ package me.artificial.autoserver.common;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class NetworkCommands {
     /*
@@ -11,6 +12,14 @@ public class NetworkCommands {
     public static final String BOOT = "BOOT_SERVER";
     /** Stop backend listener */
     public static final String SHUTDOWN_BOOT_LISTENER = "SHUTDOWN_BOOT_LISTENER";
+    /** Turn this connection into a long-lived control session, see {@link #withRequestId(int, String)} */
+    public static final String SESSION = "SESSION";
+    /** Heartbeat, answered with PONG */
+    public static final String PING = "PING";
+    /** Ask whether the backend server is running, answered with RUNNING, STOPPED, or UNKNOWN */
+    public static final String STATUS = "STATUS";
+    /** Stop the backend server, answered with SUCCESS or FAILED */
+    public static final String STOP = "STOP_SERVER";
 
     /*
      * Backend -> AutoServer
@@ -19,15 +28,88 @@ public class NetworkCommands {
     public static final String ACKNOWLEDGED = "ACKNOWLEDGED";
     /** Backend server has executed the boot command successfully but is not yet running */
     public static final String COMPLETED = "COMPLETED";
+    /** Backend server is still being watched, sent periodically while waiting for it to become ready */
+    public static final String PROGRESS = "PROGRESS";
+    /** Backend server process is alive after being launched */
+    public static final String PROCESS_ALIVE = "PROCESS_ALIVE";
+    /** Backend server game port is accepting connections */
+    public static final String PORT_LISTENING = "PORT_LISTENING";
+    /** Backend server is ready for players, final message of a successful boot */
+    public static final String READY = "READY";
     /** Backend server encountered an error during boot */
     public static final String FAILED = "FAILED";
     /** Backend server has accepted shutdown request */
     public static final String SUCCESS = "SUCCESS";
     /** Backend server encountered an error */
     public static final String ERROR = "ERROR";
+    /** Backend listener accepted the control session */
+    public static final String SESSION_ACCEPTED = "SESSION_ACCEPTED";
+    /** Answer to PING */
+    public static final String PONG = "PONG";
+    /** Backend server is running */
+    public static final String RUNNING = "RUNNING";
+    /** Backend server is not running */
+    public static final String STOPPED = "STOPPED";
+    /** Backend listener can not tell if the server is running */
+    public static final String UNKNOWN = "UNKNOWN";
 
     /**
-     * Encodes a message and its signature into a binary format.
+     * Prefixes a command with a request id. Inside a control session every command and every answer
+     * carries the id of the request it belongs to, so several requests can share one connection.
+     */
+    public static String withRequestId(int requestId, String command) {
+        return requestId + " " + command;
+    }
+
+    /**
+     * Splits a session message into its request id and command.
+     *
+     * @return The parsed message, or null if it does not start with a request id.
+     */
+    public static SessionMessage parseSessionMessage(String message) {
+        if (message == null) {
+            return null;
+        }
+        int space = message.indexOf(' ');
+        if (space <= 0) {
+            return null;
+        }
+        try {
+            return new SessionMessage(Integer.parseInt(message.substring(0, space)), message.substring(space + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public record SessionMessage(int requestId, String command) {}
+
+    /**
+     * Addresses a command to one server of a Boot Listener that manages several.
+     *
+     * @param serverName Name of the server in the Boot Listener config, or null for its only server.
+     */
+    public static String withServer(String command, String serverName) {
+        return serverName == null ? command : command + " " + serverName;
+    }
+
+    /**
+     * Splits a command from the server it is addressed to.
+     *
+     * @return The parsed command, the server name is null if the command does not name one.
+     */
+    public static ServerCommand parseServerCommand(String message) {
+        int space = message.indexOf(' ');
+        if (space < 0) {
+            return new ServerCommand(message, null);
+        }
+        return new ServerCommand(message.substring(0, space), message.substring(space + 1));
+    }
+
+    public record ServerCommand(String command, String serverName) {}
+
+    /**
+     * Encodes a message and its signature into a binary format, communication version 2.
+     * See {@link ControlProtocol} for version 3.
      * <p>
      * Format if security enabled:
      *  [4-byte total message length][4-byte message length][message][4-byte signature length][signature]
@@ -35,6 +117,8 @@ public class NetworkCommands {
      *  [4-byte total message length][4-byte message length][message]
      */
     public static byte[] encodeData(String command, Boolean securityEnabled, String secret) {
+        // lengths are in bytes, not characters, or anything beyond ASCII breaks the frame
+        byte[] commandBytes = command.getBytes(StandardCharsets.UTF_8);
         if (securityEnabled) {
             assert secret != null;
 
@@ -44,23 +128,24 @@ public class NetworkCommands {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
-            int totalLength = 4 + command.length() + 4 + signature.length();
+            byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
+            int totalLength = 4 + commandBytes.length + 4 + signatureBytes.length;
 
             ByteBuffer buffer = ByteBuffer.allocate(4 + totalLength);
             buffer.putInt(totalLength);
-            buffer.putInt(command.length());
-            buffer.put(command.getBytes());
-            buffer.putInt(signature.length());
-            buffer.put(signature.getBytes());
+            buffer.putInt(commandBytes.length);
+            buffer.put(commandBytes);
+            buffer.putInt(signatureBytes.length);
+            buffer.put(signatureBytes);
 
             return buffer.array();
         }
-        int totalLength = 4 + command.length();
+        int totalLength = 4 + commandBytes.length;
 
         ByteBuffer buffer = ByteBuffer.allocate(4 + totalLength);
         buffer.putInt(totalLength);
-        buffer.putInt(command.length());
-        buffer.put(command.getBytes());
+        buffer.putInt(commandBytes.length);
+        buffer.put(commandBytes);
 
         return buffer.array();
     }
@@ -69,16 +154,23 @@ public class NetworkCommands {
         try {
             ByteBuffer buffer = ByteBuffer.wrap(data);
             int commandLength = buffer.getInt();
+            // lengths come from an unauthenticated client, never allocate more than was sent
+            if (commandLength < 0 || commandLength > buffer.remaining()) {
+                return new DecodedMessage(true, null, null);
+            }
             byte[] commandBytes = new byte[commandLength];
             buffer.get(commandBytes);
-            String command = new String(commandBytes);
+            String command = new String(commandBytes, StandardCharsets.UTF_8);
 
             String signature = null;
             if (securityEnabled) {
                 int signatureLength = buffer.getInt();
+                if (signatureLength < 0 || signatureLength > buffer.remaining()) {
+                    return new DecodedMessage(true, null, null);
+                }
                 byte[] signatureBytes = new byte[signatureLength];
                 buffer.get(signatureBytes);
-                signature = new String(signatureBytes);
+                signature = new String(signatureBytes, StandardCharsets.UTF_8);
             }
 
             return new DecodedMessage((buffer.remaining() != 0), command, signature);
@@ -0,0 +1,195 @@
+package me.artificial.autoserver.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs one backend server as a child of the Boot Listener when it is in agent mode.
+ * <p>
+ * The output of the server is forwarded to the Boot Listener console as it is written. When the server
+ * exits with an error without being asked to stop it is started again, waiting longer after each crash
+ * in a row, until {@code bootListener.maxRestarts} is reached. A server that stayed up for a while
+ * starts with a clean slate.
+ */
+public class ServerSupervisor {
+    private static final long INITIAL_RESTART_DELAY_MS = 5000;
+    private static final long STABLE_AFTER_MS = 5 * 60 * 1000;
+    private static final int DEFAULT_MAX_RESTARTS = 3;
+
+    private final BackendConfig config;
+    private final String serverName;
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<CommandRunner.CommandResult> launcher;
+    private CommandRunner.CommandResult current;
+    private ScheduledFuture<?> pendingRestart;
+    private boolean stopRequested = false;
+    private long startedAt;
+    private int restarts = 0;
+
+    /**
+     * @param launcher Runs the start command, returns null if it could not be started.
+     */
+    public ServerSupervisor(BackendConfig config, String serverName, ScheduledExecutorService scheduler, Supplier<CommandRunner.CommandResult> launcher) {
+        this.config = config;
+        this.serverName = serverName;
+        this.scheduler = scheduler;
+        this.launcher = launcher;
+    }
+
+    /**
+     * Starts the server unless it is already running.
+     *
+     * @return The running server, or null if it could not be started.
+     */
+    public synchronized CommandRunner.CommandResult start() {
+        if (isRunning()) {
+            System.out.println("Backend server " + serverName + " is already running (PID " + current.getPid() + ").");
+            return current;
+        }
+        cancelRestart();
+        stopRequested = false;
+        restarts = 0;
+        return launch();
+    }
+
+    /**
+     * Stops the server with its {@code stopCommand}, or by typing {@code stop} into its console when
+     * no stop command is set. The server is not restarted until the next start.
+     *
+     * @return true if the server was asked to stop or was not running, false if the request could not be sent.
+     */
+    public synchronized boolean stop() {
+        stopRequested = true;
+        cancelRestart();
+        if (!isRunning()) {
+            System.out.println("Backend server " + serverName + " is not running.");
+            return true;
+        }
+
+        String stopCommand = config.getString(config.serverPath(serverName, "stopCommand"));
+        if (stopCommand == null) {
+            return sendCommand("stop");
+        }
+        CommandRunner.CommandResult result = CommandRunner.runCommand(config.getString(config.serverPath(serverName, "workingDirectory")),
+                stopCommand, config.getBoolean(config.serverPath(serverName, "preserveQuotes")));
+        if (result.failedToStart()) {
+            System.err.println(result.getErrorMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a line to the console of the server, as if it was typed in.
+     *
+     * @return true if the line was written.
+     */
+    public synchronized boolean sendCommand(String command) {
+        if (!isRunning()) {
+            return false;
+        }
+        OutputStream input = current.getProcess().getOutputStream();
+        try {
+            input.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            input.flush();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to write to the console of " + serverName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return current != null && !current.isTerminated();
+    }
+
+    /**
+     * @return The server process if it is running.
+     */
+    public synchronized Optional<Process> getProcess() {
+        return isRunning() ? Optional.of(current.getProcess()) : Optional.empty();
+    }
+
+    private CommandRunner.CommandResult launch() {
+        CommandRunner.CommandResult result = launcher.get();
+        if (result == null) {
+            return null;
+        }
+        current = result;
+        startedAt = System.currentTimeMillis();
+        System.out.println("Backend server " + serverName + " started with PID " + result.getPid());
+
+        Process process = result.getProcess();
+        Thread output = new Thread(() -> forwardOutput(process), "BootListener-Output-" + serverName);
+        output.setDaemon(true);
+        output.start();
+        process.onExit().thenAccept(exited -> onExit(result));
+        return result;
+    }
+
+    private synchronized void onExit(CommandRunner.CommandResult result) {
+        if (result != current) {
+            return;
+        }
+        int exitCode = result.getExitCode();
+        if (stopRequested) {
+            System.out.println("Backend server " + serverName + " stopped with exit code " + exitCode);
+            return;
+        }
+        if (exitCode == 0) {
+            System.out.println("Backend server " + serverName + " exited on its own, not restarting it.");
+            return;
+        }
+        if (!config.getBoolean("bootListener.restartOnCrash", true)) {
+            System.err.println("Backend server " + serverName + " crashed with exit code " + exitCode + ", restarting is disabled.");
+            return;
+        }
+
+        if (System.currentTimeMillis() - startedAt > STABLE_AFTER_MS) {
+            restarts = 0;
+        }
+        int maxRestarts = Optional.ofNullable(config.getInt("bootListener.maxRestarts")).orElse(DEFAULT_MAX_RESTARTS);
+        if (restarts >= maxRestarts) {
+            System.err.println("Backend server " + serverName + " crashed " + restarts + " times in a row, not restarting it until the next start request.");
+            return;
+        }
+        long delay = INITIAL_RESTART_DELAY_MS << restarts;
+        restarts++;
+        System.err.println("Backend server " + serverName + " crashed with exit code " + exitCode + ", restarting in " + (delay / 1000)
+                + " seconds (attempt " + restarts + " of " + maxRestarts + ").");
+        pendingRestart = scheduler.schedule(() -> {
+            synchronized (this) {
+                pendingRestart = null;
+                if (!stopRequested && !isRunning()) {
+                    launch();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelRestart() {
+        if (pendingRestart != null) {
+            pendingRestart.cancel(false);
+            pendingRestart = null;
+        }
+    }
+
+    private void forwardOutput(Process process) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("[" + serverName + "] " + line);
+            }
+        } catch (IOException e) {
+            System.out.println("Stopped reading output of " + serverName + ": " + e.getMessage());
+        }
+    }
+}
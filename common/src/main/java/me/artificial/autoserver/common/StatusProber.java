@@ -0,0 +1,415 @@
+package me.artificial.autoserver.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Checks whether Minecraft servers are up using non-blocking sockets on a single thread.
+ * <p>
+ * A probe does a non-blocking connect with its own deadline. A refused connection is reported as
+ * offline straight away instead of waiting for the timeout. Optionally a minimal handshake and
+ * status request is sent so the player count can be read from the response.
+ */
+public class StatusProber implements Closeable {
+    private static final int MAX_RESPONSE_SIZE = 64 * 1024;
+    private static final int PROTOCOL_VERSION = -1; // "any" version, servers still answer status
+    private static final int NEXT_STATE_STATUS = 1;
+
+    public enum State {
+        /** Server accepted the connection, and answered the status request if one was sent */
+        ONLINE,
+        /** Connection was refused or reset */
+        OFFLINE,
+        /** No answer before the deadline */
+        TIMEOUT
+    }
+
+    public static class Result {
+        private final State state;
+        private final int onlinePlayers;
+        private final long latencyNanos;
+
+        public Result(State state, int onlinePlayers, long latencyNanos) {
+            this.state = state;
+            this.onlinePlayers = onlinePlayers;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public boolean isOnline() {
+            return state == State.ONLINE;
+        }
+
+        /**
+         * @return Number of players online, or -1 if the status was not requested or could not be read.
+         */
+        public int getOnlinePlayers() {
+            return onlinePlayers;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{state=" + state + ", onlinePlayers=" + onlinePlayers + ", latencyNanos=" + latencyNanos + "}";
+        }
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Consumer<Exception> onStopped;
+    private final Queue<Probe> pending = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Probe> deadlines = new PriorityQueue<>((a, b) -> Long.compare(a.deadline, b.deadline));
+    private volatile boolean running = true;
+
+    public StatusProber() throws IOException {
+        this("AutoServer-StatusProber");
+    }
+
+    public StatusProber(String threadName) throws IOException {
+        this(threadName, e -> {});
+    }
+
+    /**
+     * @param onStopped Told why the prober thread died, every probe after that is answered offline.
+     */
+    public StatusProber(String threadName, Consumer<Exception> onStopped) throws IOException {
+        this.onStopped = onStopped;
+        selector = Selector.open();
+        thread = new Thread(this::loop, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Probes a server.
+     *
+     * @param address Address of the Minecraft server.
+     * @param timeout Time allowed for the whole probe.
+     * @param requestStatus Whether to send a handshake and status request after connecting.
+     * @return A CompletableFuture that always completes normally with the result of the probe.
+     *         It is completed on the prober thread, so dependent actions should be quick.
+     */
+    public CompletableFuture<Result> probe(InetSocketAddress address, Duration timeout, boolean requestStatus) {
+        Probe probe = new Probe(address, System.nanoTime(), timeout.toNanos(), requestStatus);
+        if (!running) {
+            probe.finish(State.OFFLINE, -1);
+            return probe.result;
+        }
+        pending.add(probe);
+        if (!running) {
+            // the loop may have stopped after the check above and will not drain the queue again
+            failPending();
+        }
+        selector.wakeup();
+        return probe.result;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                register();
+                long wait = 0;
+                Probe next = deadlines.peek();
+                if (next != null) {
+                    wait = Math.max(1, (next.deadline - System.nanoTime()) / 1_000_000);
+                }
+                selector.select(wait);
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+                expire();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (running) {
+                onStopped.accept(e);
+            }
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                ((Probe) key.attachment()).finish(State.OFFLINE, -1);
+            }
+            failPending();
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void failPending() {
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            probe.finish(State.OFFLINE, -1);
+        }
+    }
+
+    private void register() {
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            try {
+                SocketChannel channel = SocketChannel.open();
+                probe.channel = channel;
+                channel.configureBlocking(false);
+                if (channel.connect(probe.address)) {
+                    probe.key = channel.register(selector, 0, probe);
+                    connected(probe);
+                } else {
+                    probe.key = channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                }
+                if (!probe.result.isDone()) {
+                    deadlines.add(probe);
+                }
+            } catch (IOException | RuntimeException e) {
+                // an unresolved address lands here as well, only this probe fails
+                probe.finish(State.OFFLINE, -1);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Probe probe = (Probe) key.attachment();
+        try {
+            if (key.isValid() && key.isConnectable()) {
+                // throws ConnectException straight away when refused
+                probe.channel.finishConnect();
+                connected(probe);
+            }
+            if (key.isValid() && key.isWritable()) {
+                probe.channel.write(probe.request);
+                if (!probe.request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if (key.isValid() && key.isReadable()) {
+                read(probe);
+            }
+        } catch (IOException | RuntimeException e) {
+            // ClosedSelectorException is not one probe's fault, let the loop stop
+            if (e instanceof ClosedSelectorException) {
+                throw (ClosedSelectorException) e;
+            }
+            probe.finish(State.OFFLINE, -1);
+        }
+    }
+
+    private void connected(Probe probe) throws IOException {
+        if (!probe.requestStatus) {
+            probe.finish(State.ONLINE, -1);
+            return;
+        }
+        probe.request = statusRequest(probe.address);
+        probe.response = ByteBuffer.allocate(1024);
+        probe.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void read(Probe probe) throws IOException {
+        if (!probe.response.hasRemaining()) {
+            if (probe.response.capacity() >= MAX_RESPONSE_SIZE) {
+                // Answered but too big to bother with, the server is clearly up
+                probe.finish(State.ONLINE, -1);
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_RESPONSE_SIZE, probe.response.capacity() * 2));
+            probe.response.flip();
+            bigger.put(probe.response);
+            probe.response = bigger;
+        }
+
+        int read = probe.channel.read(probe.response);
+        String json = parseStatus(probe.response);
+        if (json != null) {
+            probe.finish(State.ONLINE, onlinePlayers(json));
+        } else if (read < 0) {
+            // Connection accepted but closed without a full status, still listening
+            probe.finish(State.ONLINE, -1);
+        }
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+        while (!deadlines.isEmpty()) {
+            Probe probe = deadlines.peek();
+            if (probe.result.isDone()) {
+                deadlines.poll();
+            } else if (probe.deadline <= now) {
+                deadlines.poll();
+                probe.finish(State.TIMEOUT, -1);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Builds a handshake packet followed by a status request packet.
+     */
+    static ByteBuffer statusRequest(InetSocketAddress address) {
+        byte[] host = address.getHostString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream(host.length + 16);
+        writeVarInt(handshake, 0x00); // packet id
+        writeVarInt(handshake, PROTOCOL_VERSION);
+        writeVarInt(handshake, host.length);
+        handshake.write(host, 0, host.length);
+        handshake.write((address.getPort() >> 8) & 0xFF);
+        handshake.write(address.getPort() & 0xFF);
+        writeVarInt(handshake, NEXT_STATE_STATUS);
+
+        ByteArrayOutputStream packets = new ByteArrayOutputStream(handshake.size() + 8);
+        writeVarInt(packets, handshake.size());
+        packets.writeBytes(handshake.toByteArray());
+        writeVarInt(packets, 1); // status request length
+        writeVarInt(packets, 0x00); // status request id
+        return ByteBuffer.wrap(packets.toByteArray());
+    }
+
+    /**
+     * Reads the JSON out of a status response packet.
+     *
+     * @param buffer Buffer in write mode holding everything read so far.
+     * @return The JSON string, or null if the packet is not complete yet.
+     */
+    static String parseStatus(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        try {
+            int packetLength = readVarInt(view);
+            if (packetLength < 0) {
+                return "";
+            }
+            if (view.remaining() < packetLength) {
+                return null;
+            }
+            int packetId = readVarInt(view);
+            if (packetId != 0x00) {
+                return "";
+            }
+            int jsonLength = readVarInt(view);
+            if (jsonLength < 0 || jsonLength > MAX_RESPONSE_SIZE) {
+                // a broken length, the server answered so it is up
+                return "";
+            }
+            if (view.remaining() < jsonLength) {
+                return null;
+            }
+            byte[] json = new byte[jsonLength];
+            view.get(json);
+            return new String(json, StandardCharsets.UTF_8);
+        } catch (IndexOutOfBoundsException | java.nio.BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    static int onlinePlayers(String json) {
+        int players = json.indexOf("\"players\"");
+        if (players < 0) {
+            return -1;
+        }
+        int online = json.indexOf("\"online\"", players);
+        if (online < 0) {
+            return -1;
+        }
+        int i = json.indexOf(':', online) + 1;
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        int start = i;
+        while (i < json.length() && Character.isDigit(json.charAt(i))) {
+            i++;
+        }
+        if (start == i) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(json.substring(start, i));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 35) {
+                throw new IndexOutOfBoundsException("VarInt too big");
+            }
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static class Probe {
+        private final InetSocketAddress address;
+        private final long started;
+        private final long deadline;
+        private final boolean requestStatus;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private ByteBuffer response;
+
+        private Probe(InetSocketAddress address, long started, long timeoutNanos, boolean requestStatus) {
+            this.address = address;
+            this.started = started;
+            this.deadline = started + timeoutNanos;
+            this.requestStatus = requestStatus;
+        }
+
+        private void finish(State state, int onlinePlayers) {
+            if (key != null) {
+                key.cancel();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+            result.complete(new Result(state, onlinePlayers, System.nanoTime() - started));
+        }
+    }
+}
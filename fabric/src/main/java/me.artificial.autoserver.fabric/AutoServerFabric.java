@@ -30,7 +30,10 @@ public class AutoServerFabric implements ModInitializer {
     public void onDisable() {
         // We don't use LOGGER anymore because it is often unloaded by this point
         Boolean enabled = config.getBoolean("bootListener.enabled");
-        if (enabled != null && enabled) {
+        if (config.isAgentMode()) {
+            // the agent started this server and is still running, it takes over from here
+            System.out.println("Boot Listener runs in agent mode, not starting another one.");
+        } else if (enabled != null && enabled) {
             System.out.println("Starting Boot Listener...");
             startBootListener();
         } else {
@@ -0,0 +1,218 @@
+package me.artificial.autoserver.loadtest;
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.ServerPostConnectEvent;
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import com.velocitypowered.api.scheduler.Scheduler;
+import com.velocitypowered.api.scheduler.TaskStatus;
+import me.artificial.autoserver.velocity.AutoServer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the part of Velocity for the plugin: it hands out the servers and players, runs scheduled tasks,
+ * and fires the connection events the way the proxy does.
+ */
+final class FakeProxy {
+    private final Map<String, SimulatedServer> servers = new LinkedHashMap<>();
+    private final Map<UUID, SimulatedPlayer> players = new LinkedHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final ProxyServer proxy;
+    private AutoServer plugin;
+
+    /**
+     * @param executor Runs the tasks the plugin schedules.
+     */
+    FakeProxy(List<SimulatedServer> servers, ScheduledExecutorService executor) {
+        servers.forEach(server -> this.servers.put(server.getName(), server));
+        this.executor = executor;
+        Scheduler scheduler = Fakes.of(Scheduler.class, Map.of(
+                "buildTask", args -> new Task(args[0], (Runnable) args[1]).builder));
+        this.proxy = Fakes.of(ProxyServer.class, Map.of(
+                "getAllServers", args -> registeredServers(),
+                "getServer", args -> Optional.ofNullable(this.servers.get((String) args[0])).map(SimulatedServer::asRegisteredServer),
+                "getAllPlayers", args -> onlinePlayers(),
+                "getPlayer", args -> Optional.ofNullable(players.get((UUID) args[0])).map(SimulatedPlayer::asPlayer),
+                "getPlayerCount", args -> onlinePlayers().size(),
+                "getScheduler", args -> scheduler));
+    }
+
+    ProxyServer asProxyServer() {
+        return proxy;
+    }
+
+    /**
+     * Must be called before any event is fired.
+     */
+    void setPlugin(AutoServer plugin) {
+        this.plugin = plugin;
+    }
+
+    SimulatedPlayer addPlayer(int index) {
+        SimulatedPlayer player = new SimulatedPlayer(index, this::connect);
+        players.put(player.asPlayer().getUniqueId(), player);
+        return player;
+    }
+
+    /**
+     * A player logs in and asks for a server. They land on it straight away if the plugin allows it,
+     * otherwise they wait for the plugin to send them once it is started. Being let through to a
+     * server that is down fails the join, like it would on the proxy.
+     */
+    CompletableFuture<Void> join(SimulatedPlayer player, SimulatedServer server) {
+        return preConnect(player, server).thenAccept(event -> {
+            ServerPreConnectEvent.ServerResult result = event.getResult();
+            if (!result.isAllowed()) {
+                return;
+            }
+            SimulatedServer target = servers.get(result.getServer().orElseThrow().getServerInfo().getName());
+            if (!target.getBackend().isOnline()) {
+                throw new IllegalStateException(player.asPlayer().getUsername() + " was let through to " + target.getName() + " while it is down");
+            }
+            connected(player, target);
+        });
+    }
+
+    /**
+     * A player logs out.
+     */
+    void disconnect(SimulatedPlayer player) {
+        plugin.onDisconnect(new DisconnectEvent(player.asPlayer(), DisconnectEvent.LoginStatus.SUCCESSFUL_LOGIN));
+        player.leave();
+    }
+
+    /**
+     * A connection request made by the plugin, goes through the pre connect event like any other.
+     */
+    private CompletableFuture<ConnectionRequestBuilder.Result> connect(SimulatedPlayer player, RegisteredServer target) {
+        SimulatedServer server = servers.get(target.getServerInfo().getName());
+        return preConnect(player, server).thenApply(event -> {
+            if (!event.getResult().isAllowed()) {
+                return result(ConnectionRequestBuilder.Status.CONNECTION_CANCELLED);
+            }
+            if (!server.getBackend().isOnline()) {
+                return result(ConnectionRequestBuilder.Status.SERVER_DISCONNECTED);
+            }
+            connected(player, server);
+            return result(ConnectionRequestBuilder.Status.SUCCESS);
+        });
+    }
+
+    private CompletableFuture<ServerPreConnectEvent> preConnect(SimulatedPlayer player, SimulatedServer server) {
+        ServerPreConnectEvent event = new ServerPreConnectEvent(player.asPlayer(), server.asRegisteredServer());
+        CompletableFuture<ServerPreConnectEvent> handled = new CompletableFuture<>();
+        EventTask task = plugin.onServerPreConnect(event);
+        if (task == null) {
+            handled.complete(event);
+            return handled;
+        }
+        task.execute(new Continuation() {
+            @Override
+            public void resume() {
+                handled.complete(event);
+            }
+
+            @Override
+            public void resumeWithException(Throwable exception) {
+                handled.completeExceptionally(exception);
+            }
+        });
+        return handled;
+    }
+
+    private void connected(SimulatedPlayer player, SimulatedServer server) {
+        SimulatedServer previous = player.connected(server);
+        plugin.onServerPostConnect(new ServerPostConnectEvent(player.asPlayer(),
+                previous == null ? null : previous.asRegisteredServer()));
+    }
+
+    private Collection<RegisteredServer> registeredServers() {
+        return servers.values().stream().map(SimulatedServer::asRegisteredServer).toList();
+    }
+
+    private List<Player> onlinePlayers() {
+        return players.values().stream()
+                .map(SimulatedPlayer::asPlayer)
+                .filter(player -> player.getCurrentServer().isPresent())
+                .toList();
+    }
+
+    private static ConnectionRequestBuilder.Result result(ConnectionRequestBuilder.Status status) {
+        return Fakes.of(ConnectionRequestBuilder.Result.class, Map.of(
+                "isSuccessful", args -> status == ConnectionRequestBuilder.Status.SUCCESS,
+                "getStatus", args -> status));
+    }
+
+    /**
+     * A task built through the scheduler, run on the executor of the proxy.
+     */
+    private final class Task {
+        private final Object owner;
+        private final Runnable runnable;
+        private final Scheduler.TaskBuilder builder;
+        private long delay = 0;
+        private long repeat = 0;
+
+        private Task(Object owner, Runnable runnable) {
+            this.owner = owner;
+            this.runnable = runnable;
+            this.builder = Fakes.of(Scheduler.TaskBuilder.class, Map.of(
+                    "delay", args -> {
+                        delay = millis(args);
+                        return builder();
+                    },
+                    "repeat", args -> {
+                        repeat = millis(args);
+                        return builder();
+                    },
+                    "clearDelay", args -> {
+                        delay = 0;
+                        return builder();
+                    },
+                    "clearRepeat", args -> {
+                        repeat = 0;
+                        return builder();
+                    },
+                    "schedule", args -> schedule()));
+        }
+
+        private Scheduler.TaskBuilder builder() {
+            return builder;
+        }
+
+        private ScheduledTask schedule() {
+            ScheduledFuture<?> future = repeat > 0
+                    ? executor.scheduleAtFixedRate(runnable, delay, repeat, TimeUnit.MILLISECONDS)
+                    : executor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+            return Fakes.of(ScheduledTask.class, Map.of(
+                    "plugin", args -> owner,
+                    "status", args -> future.isCancelled() ? TaskStatus.CANCELLED
+                            : future.isDone() ? TaskStatus.FINISHED : TaskStatus.SCHEDULED,
+                    "cancel", args -> future.cancel(false)));
+        }
+
+        private static long millis(Object[] args) {
+            if (args.length == 1) {
+                return ((Duration) args[0]).toMillis();
+            }
+            return ((TimeUnit) args[1]).toMillis((Long) args[0]);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package me.artificial.autoserver.loadtest;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Stands in for the Velocity interfaces the plugin talks to.
+ * <p>
+ * Only the methods named in the answers do anything, every other method returns an empty value of its
+ * type, the fake itself for builder methods, so the fakes keep compiling and running as the API grows.
+ */
+final class Fakes {
+    private Fakes() {}
+
+    /**
+     * @param answers Answers by method name, called with the arguments of the call.
+     */
+    static <T> T of(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        Object fake = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> answer(type, answers, self, method, args == null ? new Object[0] : args));
+        return type.cast(fake);
+    }
+
+    private static Object answer(Class<?> type, Map<String, Function<Object[], Object>> answers, Object self, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> self == args[0];
+                case "hashCode" -> System.identityHashCode(self);
+                default -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+            };
+        }
+        Function<Object[], Object> answer = answers.get(method.getName());
+        if (answer != null) {
+            return answer.apply(args);
+        }
+        return empty(method.getReturnType(), self);
+    }
+
+    private static Object empty(Class<?> type, Object self) {
+        if (type == void.class) {
+            return null;
+        }
+        if (type.isPrimitive()) {
+            return Array.get(Array.newInstance(type, 1), 0);
+        }
+        if (type.isInstance(self)) {
+            return self;
+        }
+        if (type == Optional.class) {
+            return Optional.empty();
+        }
+        if (type == CompletableFuture.class) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (type == Set.class) {
+            return Set.of();
+        }
+        if (type == List.class || type == Collection.class) {
+            return List.of();
+        }
+        if (type == Map.class) {
+            return Map.of();
+        }
+        if (type.isInterface()) {
+            return of(type, Map.of());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,483 @@
+package me.artificial.autoserver.loadtest;
+
+import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.plugin.PluginContainer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import me.artificial.autoserver.common.BackendConfig;
+import me.artificial.autoserver.common.BootListener;
+import me.artificial.autoserver.common.StatusProber;
+import me.artificial.autoserver.velocity.AutoServer;
+import me.artificial.autoserver.velocity.ServerManager;
+import me.artificial.autoserver.velocity.startable.ControlSession;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Runs a whole network on loopback to see how the plugin holds up with many servers and players.
+ * <p>
+ * Every backend is a {@link StubBackend} that takes the boot delay to open its port. The backends are
+ * spread over a swarm of Boot Listeners in agent mode, running in this JVM and talking to the plugin over
+ * real control sessions. The plugin runs on a {@link FakeProxy} and sees the same events it would on
+ * Velocity. The test goes through four phases:
+ * <ol>
+ *     <li>cold joins, every player joins at once while all servers are stopped,</li>
+ *     <li>stops, every player leaves and all servers are stopped through the server manager,</li>
+ *     <li>starts, all servers are started through the server manager,</li>
+ *     <li>warm joins, every player joins again while all servers are running.</li>
+ * </ol>
+ * Each phase reports the 50th and 99th percentile of the time it took, for joins from the first pre
+ * connect event until the player is on the server, and the most threads that were alive at once.
+ */
+public class LoadTest {
+    private static final String SECRET = "load-test-secret";
+    private static final String USAGE = """
+            Usage: loadtest [options]
+              --servers <n>         backend servers (default 200)
+              --players <n>         players joining at once (default 2000)
+              --listeners <n>       Boot Listeners the servers are spread over (default 50)
+              --boot-delay <ms>     time a backend takes to open its port (default 5000)
+              --boot-jitter <ms>    up to this much is added to each boot delay (default 2000)
+              --event-threads <n>   threads firing the connection events (default 8)
+              --port <port>         first port, the servers and listeners take the ports after it (default 20000),
+                                    keep them clear of the ephemeral port range of the OS
+              --timeout <seconds>   longest a phase may take (default 120)
+              --verbose             show the output of the plugin and the listeners
+              --help                show this help""";
+    private static final int TOP_THREAD_GROUPS = 8;
+
+    private final Options options;
+    private final PrintStream report;
+    private final List<SimulatedServer> servers = new ArrayList<>();
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private final List<BootListener> listeners = new ArrayList<>();
+    private final List<Phase> phases = new ArrayList<>();
+    private final ScheduledExecutorService harness = Executors.newScheduledThreadPool(2, named("LoadTest-Harness"));
+    private final ScheduledExecutorService velocityTasks = Executors.newScheduledThreadPool(8, named("LoadTest-Velocity-Task"));
+    private final ExecutorService events;
+    private final ThreadSampler sampler = new ThreadSampler(harness);
+    private Path directory;
+    private StatusServer statusServer;
+    private StatusProber prober;
+    private FakeProxy proxy;
+    private AutoServer plugin;
+    private int startThreads;
+    private int idleThreads;
+
+    private record Options(int servers, int players, int listeners, long bootDelay, long bootJitter,
+                           int eventThreads, int port, long timeout, boolean verbose) {
+
+        private static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            boolean verbose = false;
+            for (int i = 0; i < args.length; i++) {
+                if ("--verbose".equals(args[i])) {
+                    verbose = true;
+                } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                    values.put(args[i].substring(2), args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+                }
+            }
+            Options options = new Options(
+                    number(values, "servers", 200),
+                    number(values, "players", 2000),
+                    number(values, "listeners", 50),
+                    number(values, "boot-delay", 5000),
+                    number(values, "boot-jitter", 2000),
+                    number(values, "event-threads", 8),
+                    number(values, "port", 20000),
+                    number(values, "timeout", 120),
+                    verbose);
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown option --" + values.keySet().iterator().next());
+            }
+            if (options.servers() < 1 || options.listeners() < 1 || options.listeners() > options.servers()) {
+                throw new IllegalArgumentException("Need at least one server, and between one listener and one listener per server.");
+            }
+            if (options.port() < 1024 || options.port() + options.servers() + options.listeners() > 65536) {
+                throw new IllegalArgumentException("Not enough ports from " + options.port() + " up.");
+            }
+            return options;
+        }
+
+        private static int number(Map<String, String> values, String name, int def) {
+            String value = values.remove(name);
+            if (value == null) {
+                return def;
+            }
+            try {
+                int number = Integer.parseInt(value);
+                if (number < 0) {
+                    throw new NumberFormatException();
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--" + name + " needs a positive number, got " + value);
+            }
+        }
+    }
+
+    /**
+     * Timings of one phase, in nanoseconds.
+     *
+     * @param failed Attempts that were turned away or failed.
+     * @param timedOut Attempts still waiting when the phase timed out.
+     */
+    private record Phase(String name, int attempts, long[] durations, int failed, int timedOut,
+                         int peakThreads, Map<String, Integer> threadGroups) {
+
+        private double percentile(double percentile) {
+            if (durations.length == 0) {
+                return Double.NaN;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * durations.length);
+            return durations[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    private LoadTest(Options options, PrintStream report) {
+        this.options = options;
+        this.report = report;
+        this.events = Executors.newFixedThreadPool(Math.max(1, options.eventThreads()), named("LoadTest-Event"));
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            if (List.of(args).contains("--help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        PrintStream report = System.out;
+        if (!options.verbose()) {
+            // the listeners and the plugin print a line for everything they do
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        LoadTest loadTest = new LoadTest(options, report);
+        int exitCode = 0;
+        try {
+            loadTest.run();
+        } catch (Exception e) {
+            report.println("Load test failed: " + e);
+            exitCode = 1;
+        } finally {
+            loadTest.close();
+        }
+        // listener shutdown threads are not daemons
+        System.exit(exitCode);
+    }
+
+    private void run() throws Exception {
+        startThreads = sampler.getLiveThreads();
+        report.printf("Starting %d servers on %d Boot Listeners for %d players...%n", options.servers(), options.listeners(), options.players());
+        setup();
+        idleThreads = sampler.getLiveThreads();
+
+        joins("cold joins");
+        for (SimulatedPlayer player : players) {
+            proxy.disconnect(player);
+        }
+        serverManagerPhase("stops", ServerManager::stopServer);
+        serverManagerPhase("starts", ServerManager::startServer);
+        joins("warm joins");
+
+        printReport();
+    }
+
+    private void setup() throws IOException, InterruptedException {
+        checkPortsAreFree();
+        directory = Files.createTempDirectory("autoserver-loadtest");
+        statusServer = new StatusServer();
+        prober = new StatusProber("LoadTest-Prober");
+
+        Random random = new Random(720);
+        for (int i = 0; i < options.servers(); i++) {
+            long bootDelay = options.bootDelay() + (options.bootJitter() > 0 ? random.nextLong(options.bootJitter() + 1) : 0);
+            StubBackend backend = new StubBackend("server" + (i + 1), options.port() + i, Duration.ofMillis(bootDelay), statusServer, harness);
+            servers.add(new SimulatedServer(backend, prober));
+        }
+
+        startListeners();
+        startPlugin();
+        for (int i = 0; i < options.players(); i++) {
+            players.add(proxy.addPlayer(i + 1));
+        }
+    }
+
+    private void checkPortsAreFree() throws IOException {
+        int ports = options.servers() + options.listeners();
+        for (int port = options.port(); port < options.port() + ports; port++) {
+            try (ServerSocket ignored = new ServerSocket(port)) {
+                // free
+            } catch (IOException e) {
+                throw new IOException("Port " + port + " is in use, pick other ports with --port", e);
+            }
+        }
+    }
+
+    /**
+     * Starts the Boot Listeners, server n is managed by listener n modulo the number of listeners.
+     */
+    private void startListeners() throws IOException {
+        Map<String, StubBackend> backends = new HashMap<>();
+        List<List<StubBackend>> assigned = new ArrayList<>();
+        for (int i = 0; i < options.listeners(); i++) {
+            assigned.add(new ArrayList<>());
+        }
+        for (int i = 0; i < servers.size(); i++) {
+            StubBackend backend = servers.get(i).getBackend();
+            backends.put(backend.getName(), backend);
+            assigned.get(i % options.listeners()).add(backend);
+        }
+
+        for (int i = 0; i < options.listeners(); i++) {
+            Path configDirectory = directory.resolve("listener" + (i + 1));
+            Files.createDirectories(configDirectory);
+            Files.writeString(configDirectory.resolve("config.yml"), listenerConfig(listenerPort(i), assigned.get(i)));
+            BootListener listener = new BootListener(new BackendConfig(configDirectory.toFile()),
+                    serverName -> backends.get(serverName).launch());
+            if (!listener.startInBackground()) {
+                throw new IOException("Boot Listener " + (i + 1) + " did not start");
+            }
+            listeners.add(listener);
+        }
+    }
+
+    private String listenerConfig(int port, List<StubBackend> backends) {
+        StringBuilder config = new StringBuilder()
+                .append("bootListener:\n")
+                .append("  port: ").append(port).append('\n')
+                .append("  mode: agent\n")
+                // all servers of a listener may be booting at once over its one control session
+                .append("  workerThreads: ").append(backends.size()).append('\n')
+                .append("  maxRequestsPerConnection: ").append(backends.size()).append('\n')
+                .append("security:\n")
+                .append("  enabled: true\n")
+                .append("  secret: ").append(SECRET).append('\n')
+                .append("servers:\n");
+        for (StubBackend backend : backends) {
+            config.append("  ").append(backend.getName()).append(":\n")
+                    .append("    port: ").append(backend.getPort()).append('\n');
+        }
+        return config.toString();
+    }
+
+    private void startPlugin() throws IOException, InterruptedException {
+        Path dataDirectory = directory.resolve("proxy");
+        Files.createDirectories(dataDirectory);
+        Files.writeString(dataDirectory.resolve("config.toml"), pluginConfig());
+
+        proxy = new FakeProxy(servers, velocityTasks);
+        plugin = new AutoServer(proxy.asProxyServer(), LoggerFactory.getLogger("AutoServer"), dataDirectory,
+                Fakes.of(PluginContainer.class, Map.of())) {
+            @Override
+            public String getSecret() {
+                // Velocity keeps it in forwarding.secret in its working directory
+                return SECRET;
+            }
+        };
+        proxy.setPlugin(plugin);
+        plugin.onProxyInitialization(new ProxyInitializeEvent());
+
+        // the sessions are opened in the background, measure with them up
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (SimulatedServer server : servers) {
+            Optional<ControlSession> session = plugin.getServerManager().getControlSession(server.asRegisteredServer());
+            while (session.isPresent() && !session.get().isConnected() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private String pluginConfig() {
+        StringBuilder config = new StringBuilder()
+                .append("checkForUpdates = false\n")
+                .append("\n[logging]\n")
+                .append("level = \"").append(options.verbose() ? "INFO" : "WARN").append("\"\n");
+        for (int i = 0; i < servers.size(); i++) {
+            String serverName = servers.get(i).getName();
+            config.append("\n[servers.").append(serverName).append("]\n")
+                    .append("remote = true\n")
+                    .append("port = ").append(listenerPort(i % options.listeners())).append('\n')
+                    .append("remoteServer = \"").append(serverName).append("\"\n")
+                    .append("communicationVersion = 3\n");
+        }
+        return config.toString();
+    }
+
+    private int listenerPort(int listener) {
+        return options.port() + options.servers() + listener;
+    }
+
+    /**
+     * Every player joins their server at once, player n wants server n modulo the number of servers.
+     */
+    private void joins(String name) throws InterruptedException {
+        sampler.begin();
+        List<CompletableFuture<Long>> joins = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            SimulatedPlayer player = players.get(i);
+            SimulatedServer server = servers.get(i % servers.size());
+            CompletableFuture<Long> joined = player.beginJoin();
+            joins.add(joined);
+            events.execute(() -> proxy.join(player, server).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    joined.completeExceptionally(ex);
+                }
+            }));
+        }
+        finish(name, joins);
+    }
+
+    /**
+     * Calls the server manager for every server at once.
+     */
+    private void serverManagerPhase(String name, ServerManagerCall call) throws InterruptedException {
+        ServerManager serverManager = plugin.getServerManager();
+        sampler.begin();
+        List<CompletableFuture<Long>> calls = new ArrayList<>();
+        for (SimulatedServer server : servers) {
+            long started = System.nanoTime();
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(serverManager, server.asRegisteredServer()), events)
+                    .thenCompose(Function.identity())
+                    .thenApply(result -> System.nanoTime() - started));
+        }
+        finish(name, calls);
+    }
+
+    @FunctionalInterface
+    private interface ServerManagerCall {
+        CompletableFuture<String> apply(ServerManager serverManager, RegisteredServer server);
+    }
+
+    private void finish(String name, List<CompletableFuture<Long>> attempts) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(attempts.toArray(CompletableFuture[]::new))
+                    .handle((result, ex) -> null)
+                    .get(options.timeout(), TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // counted below
+        }
+        int peakThreads = sampler.end();
+
+        int failed = 0;
+        int timedOut = 0;
+        List<Long> durations = new ArrayList<>();
+        for (CompletableFuture<Long> attempt : attempts) {
+            if (!attempt.isDone()) {
+                timedOut++;
+            } else if (attempt.isCompletedExceptionally()) {
+                failed++;
+            } else {
+                durations.add(attempt.join());
+            }
+        }
+        long[] sorted = durations.stream().mapToLong(Long::longValue).sorted().toArray();
+        Phase phase = new Phase(name, attempts.size(), sorted, failed, timedOut, peakThreads, sampler.getPeakByGroup());
+        phases.add(phase);
+        report.printf("  %s: %d done, %d failed, %d timed out%n", name, sorted.length, failed, timedOut);
+    }
+
+    private void printReport() {
+        report.println();
+        report.printf("%d servers on %d Boot Listeners, %d players, boot delay %d to %d ms, %d event threads%n",
+                options.servers(), options.listeners(), options.players(),
+                options.bootDelay(), options.bootDelay() + options.bootJitter(), options.eventThreads());
+        report.println();
+        report.printf("%-11s %6s %6s %8s %9s %9s %9s %8s%n", "phase", "count", "failed", "timeout", "p50 ms", "p99 ms", "max ms", "threads");
+        for (Phase phase : phases) {
+            report.printf("%-11s %6d %6d %8d %9.1f %9.1f %9.1f %8d%n", phase.name(), phase.attempts(), phase.failed(), phase.timedOut(),
+                    phase.percentile(50), phase.percentile(99), phase.percentile(100), phase.peakThreads());
+        }
+        report.println();
+        report.printf("Threads: %d before setup, %d with the listeners and the plugin idle%n", startThreads, idleThreads);
+        report.printf("Backend boots: %d, status pings answered: %d%n",
+                servers.stream().mapToInt(server -> server.getBackend().getBoots()).sum(),
+                servers.stream().mapToInt(server -> server.getBackend().getPings()).sum());
+        for (Phase phase : phases) {
+            report.println();
+            report.println("Most threads alive at once during " + phase.name() + ":");
+            phase.threadGroups().entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(TOP_THREAD_GROUPS)
+                    .forEach(group -> report.printf("  %5d  %s%n", group.getValue(), group.getKey()));
+        }
+    }
+
+    private void close() {
+        if (plugin != null) {
+            plugin.onProxyShutdown(new ProxyShutdownEvent());
+        }
+        listeners.forEach(BootListener::stop);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (BootListener listener : listeners) {
+            while (listener.isRunning() && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (statusServer != null) {
+            statusServer.close();
+        }
+        if (prober != null) {
+            prober.close();
+        }
+        events.shutdownNow();
+        velocityTasks.shutdownNow();
+        harness.shutdownNow();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                report.println("Could not remove " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package me.artificial.autoserver.loadtest;
+
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * A player on the fake proxy. Keeps track of how long its current join attempt took.
+ */
+final class SimulatedPlayer {
+    private final String name;
+    private final UUID id;
+    private final Player player;
+    private volatile SimulatedServer current;
+    private volatile long joinStarted;
+    private volatile CompletableFuture<Long> joined = new CompletableFuture<>();
+
+    /**
+     * @param connector Connects the player to a server when the plugin sends them there.
+     */
+    SimulatedPlayer(int index, BiFunction<SimulatedPlayer, RegisteredServer, CompletableFuture<ConnectionRequestBuilder.Result>> connector) {
+        this.name = "player" + index;
+        this.id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+        this.player = Fakes.of(Player.class, Map.of(
+                "getUsername", args -> name,
+                "getUniqueId", args -> id,
+                "isActive", args -> true,
+                "getCurrentServer", args -> Optional.ofNullable(current).map(this::connection),
+                "createConnectionRequest", args -> connectionRequest((RegisteredServer) args[0], connector),
+                "disconnect", args -> {
+                    joined.completeExceptionally(new IllegalStateException(name + " was disconnected"));
+                    return null;
+                }));
+    }
+
+    Player asPlayer() {
+        return player;
+    }
+
+    /**
+     * Starts timing a new join attempt.
+     *
+     * @return Completes with the nanoseconds until the player is on a server, or exceptionally if the
+     *         player was turned away.
+     */
+    CompletableFuture<Long> beginJoin() {
+        joinStarted = System.nanoTime();
+        joined = new CompletableFuture<>();
+        return joined;
+    }
+
+    /**
+     * Moves the player onto a server, ending the join attempt.
+     *
+     * @return The server the player was on before.
+     */
+    synchronized SimulatedServer connected(SimulatedServer server) {
+        SimulatedServer previous = current;
+        if (previous != null) {
+            previous.remove(player);
+        }
+        server.add(player);
+        current = server;
+        joined.complete(System.nanoTime() - joinStarted);
+        return previous;
+    }
+
+    /**
+     * Takes the player off their server.
+     *
+     * @return The server the player was on, or null.
+     */
+    synchronized SimulatedServer leave() {
+        SimulatedServer previous = current;
+        if (previous != null) {
+            previous.remove(player);
+        }
+        current = null;
+        return previous;
+    }
+
+    private ServerConnection connection(SimulatedServer server) {
+        return Fakes.of(ServerConnection.class, Map.of(
+                "getServer", args -> server.asRegisteredServer(),
+                "getServerInfo", args -> server.asRegisteredServer().getServerInfo(),
+                "getPlayer", args -> player));
+    }
+
+    private ConnectionRequestBuilder connectionRequest(RegisteredServer target,
+                                                       BiFunction<SimulatedPlayer, RegisteredServer, CompletableFuture<ConnectionRequestBuilder.Result>> connector) {
+        return Fakes.of(ConnectionRequestBuilder.class, Map.of(
+                "getServer", args -> target,
+                "connect", args -> connector.apply(this, target),
+                "connectWithIndication", args -> connector.apply(this, target).thenApply(ConnectionRequestBuilder.Result::isSuccessful),
+                "fireAndForget", args -> {
+                    connector.apply(this, target);
+                    return null;
+                }));
+    }
+}
@@ -0,0 +1,72 @@
+package me.artificial.autoserver.loadtest;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+import com.velocitypowered.api.proxy.server.ServerPing;
+import me.artificial.autoserver.common.StatusProber;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A server registered with the fake proxy, backed by a {@link StubBackend}.
+ */
+final class SimulatedServer {
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(5);
+
+    private final StubBackend backend;
+    private final ServerInfo info;
+    private final Set<Player> players = ConcurrentHashMap.newKeySet();
+    private final RegisteredServer registered;
+
+    /**
+     * @param prober Pings the backend the way Velocity does, with a handshake and a status request.
+     */
+    SimulatedServer(StubBackend backend, StatusProber prober) {
+        this.backend = backend;
+        this.info = new ServerInfo(backend.getName(), new InetSocketAddress(InetAddress.getLoopbackAddress(), backend.getPort()));
+        this.registered = Fakes.of(RegisteredServer.class, Map.of(
+                "getServerInfo", args -> info,
+                "getPlayersConnected", args -> List.copyOf(players),
+                "ping", args -> ping(prober)));
+    }
+
+    RegisteredServer asRegisteredServer() {
+        return registered;
+    }
+
+    StubBackend getBackend() {
+        return backend;
+    }
+
+    String getName() {
+        return info.getName();
+    }
+
+    void add(Player player) {
+        players.add(player);
+    }
+
+    void remove(Player player) {
+        players.remove(player);
+    }
+
+    private CompletableFuture<ServerPing> ping(StatusProber prober) {
+        return prober.probe(info.getAddress(), PING_TIMEOUT, true).thenApply(result -> {
+            if (!result.isOnline()) {
+                throw new CompletionException(new ConnectException("Connection refused: " + info.getAddress()));
+            }
+            // nothing reads the ping itself
+            return null;
+        });
+    }
+}
@@ -0,0 +1,321 @@
+package me.artificial.autoserver.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Answers the Minecraft handshake, status request, and ping for every stub backend that is up.
+ * <p>
+ * All stubs share one selector thread, so the harness itself barely shows up in the thread counts it
+ * reports. Only the status side of the protocol is spoken, a connection asking to log in is closed.
+ */
+final class StatusServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 512;
+    private static final int NEXT_STATE_STATUS = 1;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * State of one client connection, only touched by the selector thread.
+     */
+    private static final class Client {
+        private final StubBackend backend;
+        private final ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private ByteBuffer output = ByteBuffer.allocate(0);
+        private boolean handshaken = false;
+        private boolean closeWhenFlushed = false;
+
+        private Client(StubBackend backend) {
+            this.backend = backend;
+        }
+    }
+
+    StatusServer() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::loop, "LoadTest-Backends");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Opens the port of a backend, connections are accepted from here on.
+     */
+    ServerSocketChannel listen(StubBackend backend) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), backend.getPort()), 256);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        execute(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_ACCEPT, backend);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+        return channel;
+    }
+
+    /**
+     * Closes the port of a backend and drops its open connections, like a server that went down.
+     */
+    void close(ServerSocketChannel channel, StubBackend backend) {
+        execute(() -> {
+            closeQuietly(channel);
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Client client && client.backend == backend) {
+                    closeQuietly(key.channel());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(key);
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        closeQuietly(key.channel());
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                System.err.println("Stub backends stopped: " + e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept(SelectionKey key) throws IOException {
+        SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Client((StubBackend) key.attachment()));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+        if (channel.read(client.input) == -1) {
+            channel.close();
+            return;
+        }
+
+        client.input.flip();
+        try {
+            while (client.input.hasRemaining()) {
+                client.input.mark();
+                int length;
+                try {
+                    length = readVarInt(client.input);
+                } catch (BufferUnderflowException e) {
+                    client.input.reset();
+                    break;
+                } catch (IllegalArgumentException e) {
+                    channel.close();
+                    return;
+                }
+                if (length <= 0 || length > READ_BUFFER_SIZE) {
+                    channel.close();
+                    return;
+                }
+                if (client.input.remaining() < length) {
+                    client.input.reset();
+                    break;
+                }
+                ByteBuffer packet = client.input.slice(client.input.position(), length);
+                client.input.position(client.input.position() + length);
+                boolean keepOpen;
+                try {
+                    keepOpen = handle(client, packet);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    keepOpen = false; // malformed packet
+                }
+                if (!keepOpen) {
+                    channel.close();
+                    return;
+                }
+            }
+        } finally {
+            client.input.compact();
+        }
+        write(key);
+    }
+
+    /**
+     * @return false if the connection should be closed.
+     */
+    private boolean handle(Client client, ByteBuffer packet) {
+        int packetId = readVarInt(packet);
+        if (!client.handshaken) {
+            if (packetId != 0x00) {
+                return false;
+            }
+            int protocol = readVarInt(packet);
+            int addressLength = readVarInt(packet);
+            packet.position(packet.position() + addressLength + 2); // address and port
+            if (readVarInt(packet) != NEXT_STATE_STATUS) {
+                return false;
+            }
+            client.handshaken = true;
+            client.backend.recordPing();
+            queue(client, 0x00, string(status(client.backend, protocol)));
+            return true;
+        }
+        if (packetId == 0x00) {
+            // status request, already answered with the handshake
+            return true;
+        }
+        if (packetId == 0x01 && packet.remaining() == Long.BYTES) {
+            queue(client, 0x01, packet);
+            client.closeWhenFlushed = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+        channel.write(client.output);
+        if (client.output.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        if (client.closeWhenFlushed) {
+            channel.close();
+        }
+    }
+
+    private static void queue(Client client, int packetId, ByteBuffer payload) {
+        ByteBuffer packet = ByteBuffer.allocate(varIntSize(packetId) + payload.remaining());
+        writeVarInt(packet, packetId);
+        packet.put(payload).flip();
+
+        ByteBuffer output = ByteBuffer.allocate(client.output.remaining() + varIntSize(packet.remaining()) + packet.remaining());
+        output.put(client.output);
+        writeVarInt(output, packet.remaining());
+        output.put(packet).flip();
+        client.output = output;
+    }
+
+    private static String status(StubBackend backend, int protocol) {
+        return "{\"version\":{\"name\":\"AutoServer load test\",\"protocol\":" + protocol + "},"
+                + "\"players\":{\"max\":100,\"online\":0},"
+                + "\"description\":{\"text\":\"" + backend.getName() + "\"}}";
+    }
+
+    private static ByteBuffer string(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(varIntSize(bytes.length) + bytes.length);
+        writeVarInt(buffer, bytes.length);
+        return buffer.put(bytes).flip();
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 35) {
+                throw new IllegalArgumentException("VarInt is too long");
+            }
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,215 @@
+package me.artificial.autoserver.loadtest;
+
+import me.artificial.autoserver.common.CommandRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A backend server that only pretends to start.
+ * <p>
+ * Launching it hands the Boot Listener a stand-in {@link Process}. The port opens once the boot delay
+ * has passed and answers status pings until the server is stopped, by typing {@code stop} into its
+ * console like a supervised server or by destroying the process.
+ */
+final class StubBackend {
+    private static final AtomicLong PIDS = new AtomicLong(100_000);
+
+    private final String name;
+    private final int port;
+    private final Duration bootDelay;
+    private final StatusServer statusServer;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger boots = new AtomicInteger();
+    private final AtomicInteger pings = new AtomicInteger();
+    private StubProcess process;
+    private ScheduledFuture<?> pendingBoot;
+    private ServerSocketChannel channel;
+
+    StubBackend(String name, int port, Duration bootDelay, StatusServer statusServer, ScheduledExecutorService scheduler) {
+        this.name = name;
+        this.port = port;
+        this.bootDelay = bootDelay;
+        this.statusServer = statusServer;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts booting, used in place of the start command of the server.
+     */
+    synchronized CommandRunner.CommandResult launch() {
+        if (process == null || !process.isAlive()) {
+            boots.incrementAndGet();
+            StubProcess launched = new StubProcess();
+            process = launched;
+            pendingBoot = scheduler.schedule(() -> open(launched), bootDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return new CommandRunner.CommandResult(true, null, null, "stub " + name, process);
+    }
+
+    /**
+     * Closes the port and ends the process with exit code 0.
+     */
+    void stop() {
+        StubProcess stopped;
+        synchronized (this) {
+            if (process == null || !process.isAlive()) {
+                return;
+            }
+            if (pendingBoot != null) {
+                pendingBoot.cancel(false);
+                pendingBoot = null;
+            }
+            if (channel != null) {
+                statusServer.close(channel, this);
+                channel = null;
+            }
+            stopped = process;
+        }
+        // outside the lock, the supervisor is told about the exit right away
+        stopped.exit.complete(0);
+    }
+
+    synchronized boolean isOnline() {
+        return channel != null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    int getBoots() {
+        return boots.get();
+    }
+
+    int getPings() {
+        return pings.get();
+    }
+
+    void recordPing() {
+        pings.incrementAndGet();
+    }
+
+    private void open(StubProcess launched) {
+        synchronized (this) {
+            if (process != launched || !launched.isAlive()) {
+                return;
+            }
+            pendingBoot = null;
+            try {
+                channel = statusServer.listen(this);
+                return;
+            } catch (IOException e) {
+                System.err.println("Stub backend " + name + " could not open port " + port + ": " + e.getMessage());
+            }
+        }
+        launched.exit.complete(1);
+    }
+
+    private void consoleLine(StubProcess from, String line) {
+        if (from.isAlive() && "stop".equals(line.trim())) {
+            stop();
+        }
+    }
+
+    /**
+     * The process the Boot Listener supervises, it lives as long as the stub is booting or online.
+     */
+    private final class StubProcess extends Process {
+        private final long pid = PIDS.incrementAndGet();
+        private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        private final OutputStream console = new OutputStream() {
+            private final StringBuilder line = new StringBuilder();
+
+            @Override
+            public synchronized void write(int b) {
+                if (b == '\n') {
+                    consoleLine(StubProcess.this, line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+        };
+
+        @Override
+        public OutputStream getOutputStream() {
+            return console;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            try {
+                return exit.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                exit.get(timeout, unit);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int exitValue() {
+            if (!exit.isDone()) {
+                throw new IllegalThreadStateException("Stub backend " + name + " is still running");
+            }
+            return exit.join();
+        }
+
+        @Override
+        public void destroy() {
+            stop();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !exit.isDone();
+        }
+
+        @Override
+        public long pid() {
+            return pid;
+        }
+
+        @Override
+        public CompletableFuture<Process> onExit() {
+            // the default waits on a pool thread per process
+            return exit.thenApply(code -> this);
+        }
+    }
+}
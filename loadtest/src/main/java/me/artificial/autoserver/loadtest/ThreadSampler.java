@@ -0,0 +1,65 @@
+package me.artificial.autoserver.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the live threads of the JVM during a phase of the load test. Threads are grouped by name with
+ * the numbers taken out, so the 50 workers of a pool show up as one line.
+ */
+final class ThreadSampler {
+    private static final long SAMPLE_INTERVAL = 100; // milliseconds
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Integer> peakByGroup = new HashMap<>();
+    private ScheduledFuture<?> sampling;
+
+    ThreadSampler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts a new phase, forgetting the peaks of the last one.
+     */
+    synchronized void begin() {
+        peakByGroup.clear();
+        threads.resetPeakThreadCount();
+        sampling = scheduler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The most threads that were alive at once since {@link #begin()}.
+     */
+    synchronized int end() {
+        sampling.cancel(false);
+        sample();
+        return threads.getPeakThreadCount();
+    }
+
+    /**
+     * @return The most threads of each group seen alive at once during the last phase.
+     */
+    synchronized Map<String, Integer> getPeakByGroup() {
+        return Map.copyOf(peakByGroup);
+    }
+
+    int getLiveThreads() {
+        return threads.getThreadCount();
+    }
+
+    private synchronized void sample() {
+        Map<String, Integer> counts = new HashMap<>();
+        // names only, no stack traces
+        for (ThreadInfo info : threads.dumpAllThreads(false, false, 0)) {
+            counts.merge(info.getThreadName().replaceAll("\\d+", "#"), 1, Integer::sum);
+        }
+        counts.forEach((group, count) -> peakByGroup.merge(group, count, Math::max));
+    }
+}
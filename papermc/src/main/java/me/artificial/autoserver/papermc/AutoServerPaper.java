@@ -33,7 +33,10 @@ public final class AutoServerPaper extends JavaPlugin {
     public void onDisable() {
         // if enabled start boot listener
         Boolean enabled = config.getBoolean("bootListener.enabled");
-        if (enabled != null && enabled) {
+        if (config.isAgentMode()) {
+            // the agent started this server and is still running, it takes over from here
+            getLogger().info("Boot Listener runs in agent mode, not starting another one.");
+        } else if (enabled != null && enabled) {
             getLogger().info("Starting Boot Listener...");
             startBootListener();
         }
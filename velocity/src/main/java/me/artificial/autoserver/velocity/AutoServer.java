@@ -3,6 +3,7 @@ package me.artificial.autoserver.velocity;
 import com.google.inject.Inject;
 import com.velocitypowered.api.command.CommandManager;
 import com.velocitypowered.api.command.CommandMeta;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
 import com.velocitypowered.api.event.player.KickedFromServerEvent;
@@ -17,32 +18,42 @@ import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
 import me.artificial.autoserver.velocity.commands.AutoServerCommand;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @Plugin(id = "autoserver")
 public class AutoServer {
+    private static final String SECRET_FILE = "forwarding.secret";
+
     private final ProxyServer proxy;
     private final AutoServerLogger logger;
     private final PluginContainer pluginContainer;
+    private final Path dataDirectory;
     private final Configuration config;
     private final Set<UUID> internalTransfers = ConcurrentHashMap.newKeySet();
+    private volatile CachedSecret cachedSecret;
     private ServerManager serverManager;
-    private RateLimiter rateLimiter;
+    private volatile RateLimiter rateLimiter;
+    private ScheduledTask maintenanceTask;
+    private ConfigWatcher configWatcher;
+
+    private record CachedSecret(String secret, FileTime modified) {}
 
     @SuppressWarnings("unused")
     @Inject
@@ -50,6 +61,7 @@ public class AutoServer {
         // DON'T ACCESS VELOCITY API HERE
         this.proxy = proxy;
         this.config = new Configuration(dataDirectory);
+        this.dataDirectory = dataDirectory;
         this.logger = new AutoServerLogger(this, logger);
         this.pluginContainer = pluginContainer;
     }
@@ -79,17 +91,17 @@ public class AutoServer {
             notifyUpdates();
         }
 
-        // setup maintenance check
-        proxy.getScheduler()
-                .buildTask(this, () -> {
-                    logger.trace("Maintenance task running.");
-                    serverManager.validateServers(proxy.getAllServers());
-                })
-                .repeat(config.getMaintenanceInterval(), TimeUnit.MINUTES)
-                .schedule();
+        scheduleMaintenance();
 
         rateLimiter = new RateLimiter(config.StartRateLimit());
 
+        try {
+            configWatcher = new ConfigWatcher(this);
+            configWatcher.start();
+        } catch (IOException e) {
+            logger.warn("Unable to watch {} for changes, use /autoserver reload instead: {}", Configuration.FILE_NAME, e.getMessage());
+        }
+
 //        serverManager.refreshServerCache(proxy.getAllServers());
         logger.info("Successfully enabled AutoServer");
     }
@@ -97,13 +109,19 @@ public class AutoServer {
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
         // TODO Maybe shutdown all servers
+        if (configWatcher != null) {
+            configWatcher.close();
+        }
+        if (serverManager != null) {
+            serverManager.shutdown();
+        }
         logger.info("Successfully disabled AutoServer");
     }
 
     @Subscribe
-    public void onServerPreConnect(ServerPreConnectEvent event) {
+    public EventTask onServerPreConnect(ServerPreConnectEvent event) {
         if (internalTransfers.remove(event.getPlayer().getUniqueId())) {
-            return; // This was a plugin initiated request skipping handling
+            return null; // This was a plugin initiated request skipping handling
         }
         long startTime = System.nanoTime();
         // Check if the target server should be started
@@ -121,17 +139,23 @@ public class AutoServer {
                         rateLimiter.getRemainingCooldown(event.getPlayer()));
                 event.setResult(ServerPreConnectEvent.ServerResult.denied());
                 logger.debug("Player {} exceeded rate limit, join request denied.", event.getPlayer().getUsername());
-                return;
+                return null;
             }
             // not on a server allow to bypass the rate limit
         }
 
         // cancel schedule shutdown for server
         serverManager.cancelShutdownServer(originalServer);
+        serverManager.getPrewarmer().recordActivity(originalServer);
 
-        CompletableFuture<Boolean> isResponsive = serverManager.isServerResponsive(originalServer);
-        try {
-            if (isResponsive.get()) {
+        // A hibernated server is thawed in place, much faster than a cold start
+        CompletableFuture<Boolean> responsive = serverManager.getServerStatus(originalServer).isHibernated()
+                ? serverManager.thawServer(originalServer)
+                : serverManager.isServerResponsive(originalServer);
+
+        // Don't park the event thread on the ping, Velocity resumes the event once the future completes
+        CompletableFuture<Void> handled = responsive.thenAccept(isResponsive -> {
+            if (isResponsive) {
                 logger.info("Server {}{}{} is online allowing connection", AnsiColors.GREEN, originalServerName, AnsiColors.RESET);
                 event.setResult(ServerPreConnectEvent.ServerResult.allowed(originalServer));
             } else {
@@ -139,38 +163,39 @@ public class AutoServer {
                 logger.info("Server {}{}{} is not online attempting to start server", AnsiColors.RED, originalServerName, AnsiColors.RESET);
                 event.setResult(ServerPreConnectEvent.ServerResult.denied());
 
+                int position = serverManager.queuePlayerForServerJoin(event.getPlayer(), originalServer);
                 if (previousServer != null) {
-                    Messenger.send(event.getPlayer(), config.getMessage("starting").orElse(""), originalServerName);
-                }
-                serverManager.queuePlayerForServerJoin(event.getPlayer(), originalServerName);
-                serverManager.startServer(originalServer).exceptionally(ex -> {
-                    // Check if the is already connected to a server
-                    Optional<ServerConnection> playerCurrentServer = event.getPlayer().getCurrentServer();
-                    if (playerCurrentServer.isEmpty()) {
-                        event.getPlayer().disconnect(Component.text("Failed to start server " + originalServerName).color(NamedTextColor.RED));
+                    if (position < 0) {
+                        Messenger.send(event.getPlayer(), config.getMessage("queueFull").orElse(""), originalServerName);
                     } else {
-                        // send fail message
-                        Messenger.send(event.getPlayer(), config.getMessage("failed").orElse(""), originalServerName);
+                        Messenger.send(event.getPlayer(), config.getMessage("starting").orElse(""), originalServerName,
+                                serverManager.estimateStartup(originalServer));
+                        Messenger.send(event.getPlayer(), config.getMessage("queued").orElse(""), originalServerName, position);
                     }
-                    return null;
-                });
+                }
+                // queued players are notified by the server manager if the start fails
+                serverManager.startServer(originalServer);
             }
-        } catch (InterruptedException | ExecutionException e) {
+        }).exceptionally(e -> {
             logger.error("Error occurred while determining the status of server {}", originalServerName);
             logger.error("Exception: {}", e.getMessage(), e);
             event.setResult(ServerPreConnectEvent.ServerResult.denied());
-        }
-
+            return null;
+        }).whenComplete((result, ex) -> {
+            long duration = System.nanoTime() - startTime;
+            logger.debug("onServerPreConnect completed in: {}", duration);
+        });
 
-        long endTime = System.nanoTime();
-        long duration = (endTime - startTime);
-        logger.debug("onServerPreConnect completed in: {}", duration);
+        return EventTask.resumeWhenComplete(handled);
     }
 
     @Subscribe
     public void onServerPostConnect(ServerPostConnectEvent event) {
         logger.trace("{}ServerPostConnectEvent: {} {}", AnsiColors.CYAN, event, AnsiColors.RESET);
 
+        event.getPlayer().getCurrentServer()
+                .ifPresent(connection -> serverManager.playerConnected(connection.getServer()));
+
         RegisteredServer previousServer = event.getPreviousServer();
         if (previousServer != null && previousServer.getPlayersConnected().isEmpty()) {
             serverManager.scheduleShutdownServer(previousServer);
@@ -182,11 +207,14 @@ public class AutoServer {
         logger.trace("{}DisconnectEvent: {} {}", AnsiColors.CYAN, event, AnsiColors.RESET);
 
         Player player = event.getPlayer();
+        serverManager.removeQueuedPlayer(player);
+
         Optional<ServerConnection> serverConnection = player.getCurrentServer();
         if (serverConnection.isEmpty()) {
             return;
         }
         RegisteredServer server = serverConnection.get().getServer();
+        serverManager.getPrewarmer().recordActivity(server);
         // Count the number of players on the server
         // Doing this manually to prevent a race condition where the player
         // disconnecting is still included in getPlayersConnected()
@@ -216,6 +244,74 @@ public class AutoServer {
         }
     }
 
+    /**
+     * Reloads the config from disk and applies what changed. The new config is validated first, a bad
+     * one is rejected whole and nothing running is touched.
+     *
+     * @throws RuntimeException If the config could not be read or is not valid.
+     */
+    public synchronized void reloadConfig() throws RuntimeException {
+        Configuration.Snapshot next = config.readSnapshot();
+        List<String> problems = next.validate();
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", problems));
+        }
+        Configuration.Snapshot previous = config.swap(next);
+        if (serverManager != null) {
+            applyChanges(previous, next);
+        }
+    }
+
+    /**
+     * Settings read on every use take effect by themselves, this redoes what was set up with the old values.
+     */
+    private void applyChanges(Configuration.Snapshot previous, Configuration.Snapshot next) {
+        if (previous.global().getStartRateLimit() != next.global().getStartRateLimit()) {
+            logger.info("Start rate limit changed to {} per minute", next.global().getStartRateLimit());
+            rateLimiter = new RateLimiter(next.global().getStartRateLimit());
+        }
+        if (previous.global().getMaintenanceInterval() != next.global().getMaintenanceInterval()) {
+            logger.info("Maintenance interval changed to {} minutes", next.global().getMaintenanceInterval());
+            maintenanceTask.cancel();
+            scheduleMaintenance();
+        }
+        if (previous.global().getMaxConcurrentProbes() != next.global().getMaxConcurrentProbes()) {
+            logger.info("Health checks now ping at most {} servers at once", next.global().getMaxConcurrentProbes());
+            serverManager.setMaxConcurrentProbes(next.global().getMaxConcurrentProbes());
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (RegisteredServer server : proxy.getAllServers()) {
+            String serverName = server.getServerInfo().getName();
+            ServerProfile before = previous.profile(serverName);
+            ServerProfile after = next.profile(serverName);
+            if (before.equals(after)) {
+                continue;
+            }
+            changed.add(serverName);
+            if (before.getAutoShutdownDelay() != after.getAutoShutdownDelay()) {
+                serverManager.rescheduleShutdownServer(server);
+            }
+            if (!before.sameConnection(after)) {
+                logger.info("Connection settings of {} changed, reconnecting to its Boot Listener", serverName);
+                serverManager.reconnectServer(server);
+            }
+        }
+        if (!changed.isEmpty()) {
+            logger.info("Settings changed for {}", String.join(", ", changed));
+        }
+    }
+
+    private void scheduleMaintenance() {
+        maintenanceTask = proxy.getScheduler()
+                .buildTask(this, () -> {
+                    logger.trace("Maintenance task running.");
+                    serverManager.validateServers(proxy.getAllServers());
+                })
+                .repeat(config.getMaintenanceInterval(), TimeUnit.MINUTES)
+                .schedule();
+    }
+
     public AutoServerLogger getLogger() {
         return logger;
     }
@@ -232,14 +328,29 @@ public class AutoServer {
         return serverManager;
     }
 
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
     public Optional<String> getVersion() {
         return pluginContainer.getDescription().getVersion();
     }
 
+    /**
+     * Reads the secret from Velocity's forwarding.secret, the file is only read again once it changes.
+     */
     public String getSecret() {
-        logger.trace("Getting secret from file.");
+        Path path = Paths.get(SECRET_FILE);
         try {
-            return new String(Files.readAllBytes(Paths.get("forwarding.secret"))).trim();
+            FileTime modified = Files.getLastModifiedTime(path);
+            CachedSecret cached = cachedSecret;
+            if (cached != null && cached.modified().equals(modified)) {
+                return cached.secret();
+            }
+            logger.trace("Getting secret from file.");
+            String secret = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+            cachedSecret = new CachedSecret(secret, modified);
+            return secret;
         } catch (IOException e) {
             logger.error("Failed to get secret: " + e.getMessage());
         }
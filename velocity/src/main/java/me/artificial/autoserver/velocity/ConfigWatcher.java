@@ -0,0 +1,92 @@
+package me.artificial.autoserver.velocity;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the config when {@code config.toml} changes on disk.
+ * <p>
+ * Editors often save a file in several writes, so the reload waits until the file has been left alone
+ * for a moment. A config that cannot be read or does not validate is logged and the running settings
+ * stay in place, the next save tries again.
+ */
+public class ConfigWatcher {
+    private static final long SETTLE_MS = 500;
+
+    private final AutoServer plugin;
+    private final AutoServerLogger logger;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public ConfigWatcher(AutoServer plugin) throws IOException {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        Path directory = plugin.getDataDirectory();
+        this.watchService = directory.getFileSystem().newWatchService();
+        // The directory is watched, a file itself cannot be, and editors that save by renaming replace it
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watchLoop, "AutoServer-ConfigWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Failed to stop watching the config: {}", e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                if (!drain(watchService.take())) {
+                    continue;
+                }
+                // wait for the editor to finish writing
+                WatchKey more;
+                while ((more = watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(more);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Stopped watching the config.");
+        }
+    }
+
+    private void reload() {
+        logger.info("{} changed, reloading configuration...", Configuration.FILE_NAME);
+        try {
+            plugin.reloadConfig();
+            logger.info("Configuration reloaded.");
+        } catch (Exception e) {
+            logger.error("Failed to load config, keeping the current settings: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if one of the events was about the config file.
+     */
+    private static boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // an overflow means events were lost, the config may be among them
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || Configuration.FILE_NAME.equals(String.valueOf(event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -8,117 +8,289 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class Configuration {
-    private static final long DEFAULT_START_UP_DELAY = 60L;
-    private static final long DEFAULT_SHUTDOWN_DELAY = 5L;
-    private static final int DEFAULT_REMOTE_PORT = 8080;
-    private static final long DEFAULT_COMMUNICATION_VERSION = 2L;
-    private static final long DEFAULT_AUTO_SHUTDOWN_DELAY = -1L;
+    public static final String FILE_NAME = "config.toml";
 
     private final Path dataDirectory;
-    private Toml config;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Everything read from one version of the config file. A reload builds a new one and swaps it in
+     * whole, so a lookup never sees half of an old config and half of a new one.
+     *
+     * @param servers Profiles by server name.
+     * @param fallback Profile with only defaults, for servers missing from the config.
+     */
+    public record Snapshot(GlobalSettings global, Map<String, ServerProfile> servers, ServerProfile fallback) {
+        public static Snapshot compile(Toml config) {
+            Map<String, ServerProfile> servers = new HashMap<>();
+            Toml table = config.getTable("servers");
+            if (table != null) {
+                for (String serverName : table.toMap().keySet()) {
+                    Toml server = table.getTable(serverName);
+                    if (server != null) {
+                        servers.put(serverName, new ServerProfile(server));
+                    }
+                }
+            }
+            return new Snapshot(new GlobalSettings(config), Map.copyOf(servers), new ServerProfile(new Toml()));
+        }
+
+        public ServerProfile profile(String serverName) {
+            return servers.getOrDefault(serverName, fallback);
+        }
+
+        /**
+         * Finds settings that would only fail once they are used, such as a port out of range.
+         *
+         * @return One line for each problem, empty if the config can be used.
+         */
+        public List<String> validate() {
+            List<String> problems = new ArrayList<>();
+            if (global.getMaintenanceInterval() <= 0) {
+                problems.add("maintenanceInterval must be at least 1 minute");
+            }
+            if (global.getStartRateLimit() < 0) {
+                problems.add("startRateLimit must not be negative");
+            }
+            servers.forEach((serverName, profile) -> {
+                if (profile.getPort().isEmpty()) {
+                    problems.add("servers." + serverName + ".port must be between 0 and 65535");
+                }
+                if (profile.getCommunicationVersion() < 1 || profile.getCommunicationVersion() > 3) {
+                    problems.add("servers." + serverName + ".communicationVersion must be 1, 2 or 3");
+                }
+                if (!profile.getIdlePolicy().equals("stop") && !profile.getIdlePolicy().equals("hibernate")) {
+                    problems.add("servers." + serverName + ".idlePolicy must be stop or hibernate");
+                }
+            });
+            return problems;
+        }
+    }
 
     public Configuration(Path dataDirectory) {
         this.dataDirectory = dataDirectory;
-        this.config = new Toml();
+        this.snapshot = Snapshot.compile(new Toml());
     }
 
     /**
-     * Reloads the config from disk
+     * Reloads the config from disk, the old settings stay in place if it cannot be read.
      */
     public void reloadConfig() throws RuntimeException {
-        config = loadConfig(dataDirectory);
+        swap(readSnapshot());
     }
 
-    public Optional<String> getMessage(String messageType) {
-        String prefix = config.getString("messages.prefix", "");
-        String message = config.getString("messages." + messageType);
+    /**
+     * Reads the config from disk without putting it in use.
+     */
+    public Snapshot readSnapshot() throws RuntimeException {
+        return Snapshot.compile(loadConfig(dataDirectory));
+    }
 
-        if (message == null) {
-            return Optional.empty();
-        }
+    /**
+     * Puts a snapshot in use.
+     *
+     * @return The snapshot that was in use before.
+     */
+    public Snapshot swap(Snapshot next) {
+        Snapshot previous = snapshot;
+        snapshot = next;
+        return previous;
+    }
+
+    /**
+     * @return The settings currently in use, they do not change once handed out.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
 
-        return Optional.of(prefix + message);
+    /**
+     * @return The settings of the server, the defaults if the config does not list it.
+     */
+    public ServerProfile getProfile(RegisteredServer server) {
+        return snapshot.profile(server.getServerInfo().getName());
+    }
+
+    public Optional<String> getMessage(String messageType) {
+        return snapshot.global().getMessage(messageType);
     }
 
     public Optional<String> getPath(RegisteredServer server) {
-        String path = config.getString("servers." + server.getServerInfo().getName() +  ".workingDirectory");
-        return Optional.ofNullable(path);
+        return getProfile(server).getPath();
     }
 
     public Optional<Boolean> getPreserveQuotes(RegisteredServer server) {
-        Boolean quotes = config.getBoolean("servers." + server.getServerInfo().getName() +  ".preserveQuotes");
-        return Optional.ofNullable(quotes);
+        return getProfile(server).getPreserveQuotes();
     }
 
     public Optional<String> getStartCommand(RegisteredServer server) {
-        String command = config.getString("servers." + server.getServerInfo().getName() +  ".start");
-        return Optional.ofNullable(command);
+        return getProfile(server).getStartCommand();
     }
 
     public Optional<String> getStopCommand(RegisteredServer server) {
-        String command = config.getString("servers." + server.getServerInfo().getName() +  ".stop");
-        return Optional.ofNullable(command);
+        return getProfile(server).getStopCommand();
     }
 
     public Optional<Boolean> isRemoteServer(RegisteredServer server) {
-        Boolean remote = config.getBoolean("servers." + server.getServerInfo().getName() + ".remote");
-        return Optional.ofNullable(remote);
+        return getProfile(server).isRemote();
     }
 
     public Optional<Integer> getPort(RegisteredServer server) {
-        Long longPort = config.getLong("servers." + server.getServerInfo().getName() + ".port");
-
-        if (longPort == null) {
-            return Optional.of(DEFAULT_REMOTE_PORT);
-        }
-        if (longPort < 0 || longPort > 65535) {
-            return Optional.empty();
-        }
-
-        return Optional.of(longPort.intValue());
+        return getProfile(server).getPort();
     }
 
     public boolean getSecurity(RegisteredServer server) {
-        return config.getBoolean("servers." + server.getServerInfo().getName() + ".security", true);
+        return getProfile(server).getSecurity();
     }
 
     public long getStartUpDelay(RegisteredServer server) {
-        return config.getLong("servers." + server.getServerInfo().getName() + ".startupDelay", DEFAULT_START_UP_DELAY);
+        return getProfile(server).getStartUpDelay();
+    }
+
+    /**
+     * Maximum time to wait for a started server to answer a ping.
+     * Falls back to the startup delay plus the old retry window for configs written before this setting existed.
+     */
+    public long getStartupTimeout(RegisteredServer server) {
+        return getProfile(server).getStartupTimeout();
     }
 
     public long getShutdownDelay(RegisteredServer server) {
-        return config.getLong("servers." + server.getServerInfo().getName() + ".shutdownDelay", DEFAULT_SHUTDOWN_DELAY);
+        return getProfile(server).getShutdownDelay();
+    }
+
+    /**
+     * Maximum time to wait for a stopped server to go down.
+     * Falls back to the shutdown delay plus a margin for configs written before this setting existed.
+     */
+    public long getStopTimeout(RegisteredServer server) {
+        return getProfile(server).getStopTimeout();
+    }
+
+    public boolean getForceStop(RegisteredServer server) {
+        return getProfile(server).getForceStop();
     }
 
     public long getAutoShutdownDelay(RegisteredServer server) {
-        return config.getLong("servers." + server.getServerInfo().getName() + ".autoShutdownDelay", DEFAULT_AUTO_SHUTDOWN_DELAY);
+        return getProfile(server).getAutoShutdownDelay();
+    }
+
+    public long getMaxQueueLength(RegisteredServer server) {
+        return getProfile(server).getMaxQueueLength();
+    }
+
+    public JoinQueue.Overflow getQueueOverflow(RegisteredServer server) {
+        return getProfile(server).getQueueOverflow();
+    }
+
+    public long getTransferBatchSize(RegisteredServer server) {
+        return getProfile(server).getTransferBatchSize();
+    }
+
+    public long getTransferInterval(RegisteredServer server) {
+        return getProfile(server).getTransferInterval();
+    }
+
+    public long getTransferRetries(RegisteredServer server) {
+        return getProfile(server).getTransferRetries();
+    }
+
+    public long getTransferRetryDelay(RegisteredServer server) {
+        return getProfile(server).getTransferRetryDelay();
     }
 
     public boolean checkForUpdate() {
-        return config.getBoolean("checkForUpdates", true);
+        return snapshot.global().checkForUpdate();
     }
 
     public String getLogLevel() {
-        return config.getString("logging.level", "INFO").toUpperCase();
+        return snapshot.global().getLogLevel();
     }
 
     public int getCommunicationVersion(RegisteredServer server) {
-        return config.getLong("servers." + server.getServerInfo().getName() + ".communicationVersion", DEFAULT_COMMUNICATION_VERSION).intValue();
+        return getProfile(server).getCommunicationVersion();
     }
 
     public long getMaintenanceInterval() {
-        return config.getLong("maintenanceInterval", 5L);
+        return snapshot.global().getMaintenanceInterval();
+    }
+
+    public long getHealthCheckRunningInterval() {
+        return snapshot.global().getHealthCheckRunningInterval();
+    }
+
+    public long getHealthCheckStartingInterval() {
+        return snapshot.global().getHealthCheckStartingInterval();
+    }
+
+    public long getHealthCheckStoppedInterval() {
+        return snapshot.global().getHealthCheckStoppedInterval();
+    }
+
+    public long getHealthCheckCacheTtl() {
+        return snapshot.global().getHealthCheckCacheTtl();
+    }
+
+    public long getHealthCheckPingGrace() {
+        return snapshot.global().getHealthCheckPingGrace();
+    }
+
+    public long getMaxConcurrentProbes() {
+        return snapshot.global().getMaxConcurrentProbes();
+    }
+
+    public boolean getUseStdin(RegisteredServer server) {
+        return getProfile(server).getUseStdin();
+    }
+
+    public long getConsoleLines(RegisteredServer server) {
+        return getProfile(server).getConsoleLines();
+    }
+
+    public String getIdlePolicy(RegisteredServer server) {
+        return getProfile(server).getIdlePolicy();
+    }
+
+    /**
+     * @return Name of the server in the config of a Boot Listener that manages several servers.
+     */
+    public Optional<String> getRemoteServer(RegisteredServer server) {
+        return getProfile(server).getRemoteServer();
+    }
+
+    public boolean getPrewarm(RegisteredServer server) {
+        return getProfile(server).getPrewarm();
+    }
+
+    public double getPrewarmConfidence() {
+        return snapshot.global().getPrewarmConfidence();
+    }
+
+    public long getPrewarmLeadTime() {
+        return snapshot.global().getPrewarmLeadTime();
+    }
+
+    public double getPrewarmSmoothing() {
+        return snapshot.global().getPrewarmSmoothing();
+    }
+
+    public boolean isPrewarmDryRun() {
+        return snapshot.global().isPrewarmDryRun();
     }
 
     public long StartRateLimit() {
-        return config.getLong("startRateLimit", 2L);
+        return snapshot.global().getStartRateLimit();
     }
 
     private Toml loadConfig(Path path) throws RuntimeException {
-        File configFile = new File(path.toFile(), "config.toml");
+        File configFile = new File(path.toFile(), FILE_NAME);
 
         try {
             if (!configFile.exists()) {
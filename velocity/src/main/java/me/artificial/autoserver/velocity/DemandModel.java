@@ -0,0 +1,143 @@
+package me.artificial.autoserver.velocity;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns when each server is used, by hour of the week.
+ * <p>
+ * Every server has one slot for each of the 168 hours in a week. When an hour ends its slot is moved
+ * towards 1 if the server saw players during that hour and towards 0 if it did not, using an
+ * exponentially weighted moving average. The value of a slot can be read as the chance the server
+ * is wanted in that hour, recent weeks counting more than older ones.
+ */
+public class DemandModel {
+    public static final int SLOTS = 7 * 24;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Path file;
+    private final Map<String, double[]> slots = new ConcurrentHashMap<>();
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+    private int currentSlot;
+
+    public DemandModel(Path file) {
+        this.file = file;
+        this.currentSlot = slotOf(ZonedDateTime.now());
+    }
+
+    /**
+     * @param time A point in time.
+     * @return The hour of the week for the time, 0 is Monday midnight.
+     */
+    public static int slotOf(ZonedDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+    }
+
+    /**
+     * Marks a server as used during the current hour.
+     *
+     * @param serverName The server that saw activity.
+     */
+    public void recordActivity(String serverName) {
+        active.add(serverName);
+    }
+
+    /**
+     * Folds the hour that just ended into the model if the hour has changed.
+     *
+     * @param now The current time.
+     * @param serverNames Every known server, servers without activity are recorded as idle.
+     * @param smoothing Weight of the new observation, between 0 and 1.
+     * @return true if an hour was folded in and the model changed.
+     */
+    public synchronized boolean roll(ZonedDateTime now, Iterable<String> serverNames, double smoothing) {
+        int slot = slotOf(now);
+        if (slot == currentSlot) {
+            return false;
+        }
+        for (String serverName : serverNames) {
+            double[] values = slots.computeIfAbsent(serverName, name -> new double[SLOTS]);
+            double observed = active.remove(serverName) ? 1.0 : 0.0;
+            synchronized (values) {
+                values[currentSlot] += smoothing * (observed - values[currentSlot]);
+            }
+        }
+        active.clear();
+        currentSlot = slot;
+        return true;
+    }
+
+    /**
+     * @param serverName The server to look up.
+     * @param time The time to predict for.
+     * @return The learned chance that the server is used in the hour containing the time.
+     */
+    public double predict(String serverName, ZonedDateTime time) {
+        double[] values = slots.get(serverName);
+        if (values == null) {
+            return 0.0;
+        }
+        synchronized (values) {
+            return values[slotOf(time)];
+        }
+    }
+
+    /**
+     * Loads the model from disk, a missing or unreadable file leaves the model empty.
+     */
+    public void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            Stored stored = GSON.fromJson(reader, Stored.class);
+            if (stored == null || stored.servers == null) {
+                return;
+            }
+            stored.servers.forEach((serverName, values) -> {
+                if (values != null && values.length == SLOTS) {
+                    slots.put(serverName, values.clone());
+                }
+            });
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed demand file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the model to disk, replacing the previous file in one step.
+     */
+    public void save() throws IOException {
+        Stored stored = new Stored();
+        stored.servers = new HashMap<>();
+        slots.forEach((serverName, values) -> {
+            synchronized (values) {
+                stored.servers.put(serverName, values.clone());
+            }
+        });
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            GSON.toJson(stored, writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Stored {
+        private Map<String, double[]> servers;
+    }
+}
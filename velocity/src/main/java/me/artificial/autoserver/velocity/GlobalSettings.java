@@ -0,0 +1,122 @@
+package me.artificial.autoserver.velocity;
+
+import com.moandjiezana.toml.Toml;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The settings outside the {@code [servers]} table, read once when the config is loaded.
+ */
+public final class GlobalSettings {
+    private final Map<String, Optional<String>> messages;
+    private final boolean checkForUpdates;
+    private final String logLevel;
+    private final long maintenanceInterval;
+    private final long healthCheckRunningInterval;
+    private final long healthCheckStartingInterval;
+    private final long healthCheckStoppedInterval;
+    private final long healthCheckCacheTtl;
+    private final long healthCheckPingGrace;
+    private final long maxConcurrentProbes;
+    private final double prewarmConfidence;
+    private final long prewarmLeadTime;
+    private final double prewarmSmoothing;
+    private final boolean prewarmDryRun;
+    private final long startRateLimit;
+
+    GlobalSettings(Toml config) {
+        // the prefix is put in front once here instead of on every message sent
+        Map<String, Optional<String>> messages = new HashMap<>();
+        Toml table = config.getTable("messages");
+        if (table != null) {
+            String prefix = table.getString("prefix", "");
+            for (String messageType : table.toMap().keySet()) {
+                String message = table.getString(messageType);
+                if (message != null) {
+                    messages.put(messageType, Optional.of(prefix + message));
+                }
+            }
+        }
+        this.messages = Map.copyOf(messages);
+
+        this.checkForUpdates = config.getBoolean("checkForUpdates", true);
+        this.logLevel = config.getString("logging.level", "INFO").toUpperCase();
+        this.maintenanceInterval = config.getLong("maintenanceInterval", 5L);
+        this.healthCheckRunningInterval = config.getLong("healthCheck.runningInterval", 15L);
+        this.healthCheckStartingInterval = config.getLong("healthCheck.startingInterval", 2L);
+        this.healthCheckStoppedInterval = config.getLong("healthCheck.stoppedInterval", 60L);
+        this.healthCheckCacheTtl = config.getLong("healthCheck.cacheTtl", 30L);
+        this.healthCheckPingGrace = config.getLong("healthCheck.pingGrace", 1000L);
+        this.maxConcurrentProbes = config.getLong("healthCheck.maxConcurrentProbes", 16L);
+        this.prewarmConfidence = config.getDouble("prewarm.confidence", 0.6);
+        this.prewarmLeadTime = config.getLong("prewarm.leadTime", 10L);
+        this.prewarmSmoothing = Math.min(1.0, Math.max(0.01, config.getDouble("prewarm.smoothing", 0.3)));
+        this.prewarmDryRun = config.getBoolean("prewarm.dryRun", false);
+        this.startRateLimit = config.getLong("startRateLimit", 2L);
+    }
+
+    /**
+     * @return The message with the prefix in front, empty if the config has no such message.
+     */
+    public Optional<String> getMessage(String messageType) {
+        return messages.getOrDefault(messageType, Optional.empty());
+    }
+
+    public boolean checkForUpdate() {
+        return checkForUpdates;
+    }
+
+    public String getLogLevel() {
+        return logLevel;
+    }
+
+    public long getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    public long getHealthCheckRunningInterval() {
+        return healthCheckRunningInterval;
+    }
+
+    public long getHealthCheckStartingInterval() {
+        return healthCheckStartingInterval;
+    }
+
+    public long getHealthCheckStoppedInterval() {
+        return healthCheckStoppedInterval;
+    }
+
+    public long getHealthCheckCacheTtl() {
+        return healthCheckCacheTtl;
+    }
+
+    public long getHealthCheckPingGrace() {
+        return healthCheckPingGrace;
+    }
+
+    public long getMaxConcurrentProbes() {
+        return maxConcurrentProbes;
+    }
+
+    public double getPrewarmConfidence() {
+        return prewarmConfidence;
+    }
+
+    public long getPrewarmLeadTime() {
+        return prewarmLeadTime;
+    }
+
+    public double getPrewarmSmoothing() {
+        return prewarmSmoothing;
+    }
+
+    public boolean isPrewarmDryRun() {
+        return prewarmDryRun;
+    }
+
+    public long getStartRateLimit() {
+        return startRateLimit;
+    }
+}
@@ -0,0 +1,124 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the cached {@link ServerStatus} of every server fresh by pinging in the background.
+ * <p>
+ * How often a server is checked depends on its state, starting and stopping servers are checked often
+ * while stopped servers are left alone for longer. Only a limited number of pings are in flight at once
+ * so a large network does not flood the proxy with pings on every tick.
+ */
+public class HealthMonitor {
+    private static final long TICK_MS = 1000;
+
+    private final AutoServer plugin;
+    private final AutoServerLogger logger;
+    private final ServerManager serverManager;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Long> nextCheck = new ConcurrentHashMap<>();
+    private final Set<String> probing = ConcurrentHashMap.newKeySet();
+    private volatile Semaphore permits;
+    private ScheduledFuture<?> task;
+
+    public HealthMonitor(AutoServer plugin, ServerManager serverManager, ScheduledExecutorService scheduler) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.serverManager = serverManager;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        permits = new Semaphore((int) Math.max(1, plugin.getConfig().getMaxConcurrentProbes()));
+        task = scheduler.scheduleWithFixedDelay(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Changes how many pings may be in flight at once. Pings already running finish against the old
+     * limit, new ones count against the new one.
+     *
+     * @param maxConcurrentProbes The new limit.
+     */
+    public synchronized void setMaxConcurrentProbes(long maxConcurrentProbes) {
+        if (task == null) {
+            return;
+        }
+        permits = new Semaphore((int) Math.max(1, maxConcurrentProbes));
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Checks a server on the next tick regardless of when it was last checked.
+     *
+     * @param server The server to check.
+     */
+    public void requestCheck(RegisteredServer server) {
+        nextCheck.put(server.getServerInfo().getName(), 0L);
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            for (RegisteredServer server : plugin.getProxy().getAllServers()) {
+                String serverName = server.getServerInfo().getName();
+                if (nextCheck.getOrDefault(serverName, 0L) > now || probing.contains(serverName)) {
+                    continue;
+                }
+                if (serverManager.getServerStatus(server).isHibernated()) {
+                    // a frozen server never answers, its state only changes when it is thawed
+                    continue;
+                }
+                Semaphore current = permits;
+                if (!current.tryAcquire()) {
+                    // Limit reached, the rest will be picked up on a later tick
+                    return;
+                }
+                probing.add(serverName);
+                probe(server, serverName, current);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Health check failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param acquired The semaphore the permit was taken from, the limit may have been changed since.
+     */
+    private void probe(RegisteredServer server, String serverName, Semaphore acquired) {
+        serverManager.probeServer(server).whenComplete((online, ex) -> {
+            ServerStatus status = serverManager.getServerStatus(server);
+            long interval = intervalFor(status.get());
+            nextCheck.put(serverName, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(interval));
+            probing.remove(serverName);
+            acquired.release();
+            logger.trace("Health check {} is {}, next check in {} seconds", serverName, status.getDisplayName(), interval);
+        });
+    }
+
+    private long intervalFor(ServerStatus.Status status) {
+        Configuration config = plugin.getConfig();
+        return switch (status) {
+            case STARTING, STOPPING -> config.getHealthCheckStartingInterval();
+            case STOPPED, HIBERNATED -> config.getHealthCheckStoppedInterval();
+            case RUNNING -> config.getHealthCheckRunningInterval();
+            case UNKNOWN -> config.getHealthCheckStartingInterval();
+        };
+    }
+}
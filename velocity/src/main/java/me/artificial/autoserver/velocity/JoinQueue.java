@@ -0,0 +1,143 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.Player;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * FIFO queue of players waiting for a single server to become ready.
+ * <p>
+ * Each managed server gets its own queue so draining one server never touches the waiters of another.
+ * A player is only ever present once, re-queuing keeps the original position.
+ */
+public class JoinQueue {
+
+    /**
+     * What to do when a player tries to join a queue that is already at its limit.
+     */
+    public enum Overflow {
+        /** Turn away the player that is trying to join */
+        REJECT,
+        /** Remove the player that has been waiting the longest to make room */
+        DROP_OLDEST;
+
+        public static Overflow fromConfig(String value) {
+            if (value == null) {
+                return REJECT;
+            }
+            return switch (value.toLowerCase()) {
+                case "dropoldest", "drop_oldest", "drop-oldest" -> DROP_OLDEST;
+                default -> REJECT;
+            };
+        }
+    }
+
+    /**
+     * Outcome of {@link #offer(Player, long, Overflow)}.
+     *
+     * @param position 1 based position of the player in the queue, or -1 if the player was rejected.
+     * @param evicted  player removed to make room, or null if nobody was removed.
+     */
+    public record Offer(int position, Player evicted) {
+        public boolean accepted() {
+            return position > 0;
+        }
+    }
+
+    private final LinkedHashMap<UUID, Player> players = new LinkedHashMap<>();
+
+    /**
+     * Adds a player to the back of the queue if they are not already in it.
+     *
+     * @param player    The player to queue.
+     * @param maxLength Maximum number of waiting players, zero or less for no limit.
+     * @param overflow  Action to take when the queue is full.
+     * @return The position of the player and any player evicted to make room.
+     */
+    public synchronized Offer offer(Player player, long maxLength, Overflow overflow) {
+        UUID playerId = player.getUniqueId();
+        if (players.containsKey(playerId)) {
+            return new Offer(positionOf(playerId), null);
+        }
+
+        Player evicted = null;
+        if (maxLength > 0 && players.size() >= maxLength) {
+            if (overflow == Overflow.REJECT) {
+                return new Offer(-1, null);
+            }
+            Iterator<Player> oldest = players.values().iterator();
+            evicted = oldest.next();
+            oldest.remove();
+        }
+
+        players.put(playerId, player);
+        return new Offer(players.size(), evicted);
+    }
+
+    /**
+     * Removes a player from the queue.
+     *
+     * @param playerId The player to remove.
+     * @return true if the player was waiting in this queue.
+     */
+    public synchronized boolean remove(UUID playerId) {
+        return players.remove(playerId) != null;
+    }
+
+    /**
+     * Removes and returns up to {@code max} players from the front of the queue.
+     *
+     * @param max Maximum number of players to take.
+     * @return Players in the order they joined the queue.
+     */
+    public synchronized List<Player> poll(int max) {
+        List<Player> batch = new ArrayList<>(Math.min(max, players.size()));
+        Iterator<Player> iterator = players.values().iterator();
+        while (batch.size() < max && iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    /**
+     * Removes and returns every waiting player.
+     *
+     * @return Players in the order they joined the queue.
+     */
+    public synchronized List<Player> drain() {
+        List<Player> all = new ArrayList<>(players.values());
+        players.clear();
+        return all;
+    }
+
+    /**
+     * @return A copy of the waiting players in queue order.
+     */
+    public synchronized List<Player> players() {
+        return new ArrayList<>(players.values());
+    }
+
+    public synchronized int positionOf(UUID playerId) {
+        int position = 1;
+        for (UUID id : players.keySet()) {
+            if (id.equals(playerId)) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    public synchronized int size() {
+        return players.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return players.isEmpty();
+    }
+}
@@ -4,6 +4,8 @@ import com.velocitypowered.api.proxy.Player;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import java.time.Duration;
+
 public class Messenger {
     public static void send(Player player, String message) {
         send(player, message, null);
@@ -21,6 +23,22 @@ public class Messenger {
         player.sendMessage(component);
     }
 
+    public static void send(Player player, String message, String serverName, int position) {
+        if (message == null) {
+            return;
+        }
+        message = message.replace("%position%", String.valueOf(position));
+        send(player, message, serverName);
+    }
+
+    public static void send(Player player, String message, String serverName, Duration eta) {
+        if (message == null) {
+            return;
+        }
+        message = message.replace("%eta%", formatDuration(eta));
+        send(player, message, serverName);
+    }
+
     public static void send(Player player, String message, long seconds) {
         if (message == null) {
             return;
@@ -30,4 +48,13 @@ public class Messenger {
         Component component = miniMessage.deserialize(message);
         player.sendMessage(component);
     }
+
+    private static String formatDuration(Duration duration) {
+        long seconds = Math.max(1, duration.toSeconds());
+        if (seconds < 60) {
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        }
+        long minutes = Math.round(seconds / 60.0);
+        return minutes + (minutes == 1 ? " minute" : " minutes");
+    }
 }
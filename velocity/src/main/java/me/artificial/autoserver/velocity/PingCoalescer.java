@@ -0,0 +1,122 @@
+package me.artificial.autoserver.velocity;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes concurrent pings of the same server share one request.
+ * <p>
+ * While a ping is in flight every other caller waits on that ping instead of sending its own. Once it
+ * completes the result is reused for callers that accept a result of that age, after that the next
+ * caller sends a new ping. A caller that accepts no age at all always sends its own ping, an answer to
+ * a ping sent before it asked may already be out of date.
+ */
+public class PingCoalescer {
+
+    /**
+     * @param issued Pings actually sent to the server.
+     * @param joined Callers that waited on a ping already in flight.
+     * @param reused Callers answered from a recent result without a ping.
+     */
+    public record Stats(long issued, long joined, long reused) {
+        public long coalesced() {
+            return joined + reused;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Pings a server unless a ping is already in flight or a result is recent enough.
+     *
+     * @param serverName The server to ping.
+     * @param maxAge How old a completed result may be and still be reused, zero to always send a new ping.
+     * @param ping Sends the ping when one is needed.
+     * @return A CompletableFuture that completes with the shared result.
+     */
+    public CompletableFuture<Boolean> ping(String serverName, Duration maxAge, Supplier<CompletableFuture<Boolean>> ping) {
+        Entry entry = entries.computeIfAbsent(serverName, name -> new Entry());
+        CompletableFuture<Boolean> shared;
+        synchronized (entry) {
+            if (entry.inFlight != null && !maxAge.isZero()) {
+                entry.joined++;
+                return entry.inFlight.copy();
+            }
+            if (entry.last != null && System.nanoTime() - entry.completedAt <= maxAge.toNanos()) {
+                entry.reused++;
+                return CompletableFuture.completedFuture(entry.last);
+            }
+            shared = new CompletableFuture<>();
+            entry.inFlight = shared;
+            entry.issued++;
+        }
+
+        CompletableFuture<Boolean> request;
+        try {
+            request = ping.get();
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((online, ex) -> {
+            synchronized (entry) {
+                // a newer ping may have taken over in the meantime
+                if (entry.inFlight == shared) {
+                    entry.inFlight = null;
+                }
+                if (ex == null) {
+                    entry.last = online;
+                    entry.completedAt = System.nanoTime();
+                }
+            }
+            if (ex != null) {
+                shared.completeExceptionally(ex);
+            } else {
+                shared.complete(online);
+            }
+        });
+        // callers get a copy so one of them cannot complete or cancel the ping for the others
+        return shared.copy();
+    }
+
+    /**
+     * Drops the last result of a server so the next caller sends a new ping, used once the server is
+     * known to have gone up or down.
+     *
+     * @param serverName The server to forget.
+     */
+    public void forget(String serverName) {
+        Entry entry = entries.get(serverName);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            entry.last = null;
+        }
+    }
+
+    /**
+     * @param serverName The server to look up.
+     * @return Ping counters for the server since the proxy started.
+     */
+    public Stats stats(String serverName) {
+        Entry entry = entries.get(serverName);
+        if (entry == null) {
+            return new Stats(0, 0, 0);
+        }
+        synchronized (entry) {
+            return new Stats(entry.issued, entry.joined, entry.reused);
+        }
+    }
+
+    private static class Entry {
+        private CompletableFuture<Boolean> inFlight;
+        private Boolean last;
+        private long completedAt;
+        private long issued;
+        private long joined;
+        private long reused;
+    }
+}
@@ -0,0 +1,125 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the players waiting in a {@link JoinQueue} onto a server that has just become ready.
+ * <p>
+ * Players are sent in batches with a pause between each batch so a freshly started server is not hit
+ * by every waiting player at once. Each batch only goes out after the server answers a ping, and
+ * connections that fail are retried with an increasing delay.
+ */
+public class PlayerTransfer {
+    private final AutoServer plugin;
+    private final AutoServerLogger logger;
+    private final ServerManager serverManager;
+    private final RegisteredServer server;
+    private final String serverName;
+    private final JoinQueue queue;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final int batchSize;
+    private final long interval;
+    private final int maxRetries;
+    private final long retryDelay;
+    private int gateFailures = 0;
+
+    public PlayerTransfer(AutoServer plugin, ServerManager serverManager, RegisteredServer server, JoinQueue queue) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.serverManager = serverManager;
+        this.server = server;
+        this.serverName = server.getServerInfo().getName();
+        this.queue = queue;
+        this.batchSize = (int) Math.max(1, plugin.getConfig().getTransferBatchSize(server));
+        this.interval = Math.max(0, plugin.getConfig().getTransferInterval(server));
+        this.maxRetries = (int) Math.max(0, plugin.getConfig().getTransferRetries(server));
+        this.retryDelay = Math.max(1, plugin.getConfig().getTransferRetryDelay(server));
+    }
+
+    /**
+     * Starts sending batches.
+     *
+     * @return A CompletableFuture that completes once the queue has been emptied or the transfer gave up.
+     */
+    public CompletableFuture<Void> begin() {
+        logger.info("Moving {} queued players to {} in batches of {}", queue.size(), serverName, batchSize);
+        nextBatch();
+        return done;
+    }
+
+    private void nextBatch() {
+        if (queue.isEmpty()) {
+            done.complete(null);
+            return;
+        }
+
+        // Make sure the server is still answering before sending more players
+        serverManager.isServerOnline(server).whenComplete((online, ex) -> {
+            if (ex != null || !online) {
+                gateFailures++;
+                if (gateFailures > maxRetries) {
+                    logger.warn("Server {} stopped answering pings, giving up on queued players", serverName);
+                    serverManager.failQueuedPlayers(server);
+                    done.complete(null);
+                    return;
+                }
+                long delay = backoff(gateFailures);
+                logger.debug("Server {} did not answer before transfer, checking again in {} seconds", serverName, delay);
+                schedule(this::nextBatch, delay);
+                return;
+            }
+            gateFailures = 0;
+
+            List<Player> batch = queue.poll(batchSize);
+            logger.debug("Sending batch of {} players to {}", batch.size(), serverName);
+            for (Player player : batch) {
+                serverManager.releaseQueuedPlayer(player, serverName);
+                connect(player, 0);
+            }
+
+            if (queue.isEmpty()) {
+                done.complete(null);
+            } else {
+                schedule(this::nextBatch, interval);
+            }
+        });
+    }
+
+    private void connect(Player player, int attempt) {
+        if (!player.isActive()) {
+            return;
+        }
+
+        plugin.internalTransfer(player);
+        player.createConnectionRequest(server).connect().whenComplete((result, throwable) -> {
+            if (throwable == null && (result.isSuccessful() || result.getStatus() == ConnectionRequestBuilder.Status.ALREADY_CONNECTED)) {
+                logger.info("Player {} successfully moved to server {}", player.getUsername(), serverName);
+                return;
+            }
+
+            String reason = throwable != null ? throwable.getMessage() : result.getStatus().toString();
+            if (attempt < maxRetries) {
+                long delay = backoff(attempt + 1);
+                logger.debug("Failed to move {} to {} ({}), retrying in {} seconds", player.getUsername(), serverName, reason, delay);
+                schedule(() -> connect(player, attempt + 1), delay);
+            } else {
+                Messenger.send(player, plugin.getConfig().getMessage("failed").orElse(""), serverName);
+                logger.error("Failed to connect player to server {}", reason);
+            }
+        });
+    }
+
+    private long backoff(int attempt) {
+        return retryDelay << Math.min(attempt - 1, 10);
+    }
+
+    private void schedule(Runnable task, long seconds) {
+        plugin.getProxy().getScheduler().buildTask(plugin, task).delay(seconds, TimeUnit.SECONDS).schedule();
+    }
+}
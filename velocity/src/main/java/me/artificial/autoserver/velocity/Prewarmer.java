@@ -0,0 +1,166 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts servers shortly before players are expected and keeps them up while they are expected.
+ * <p>
+ * Predictions come from the {@link DemandModel}, which is fed by join and disconnect events and
+ * saved in the plugin data directory. Only servers with {@code prewarm = true} are started early.
+ * In dry run mode every decision is logged but nothing is started or kept running.
+ */
+public class Prewarmer {
+    private static final long TICK_SECONDS = 60;
+
+    private final AutoServer plugin;
+    private final AutoServerLogger logger;
+    private final ServerManager serverManager;
+    private final ScheduledExecutorService scheduler;
+    private final DemandModel model;
+    private ScheduledFuture<?> task;
+
+    public Prewarmer(AutoServer plugin, ServerManager serverManager, ScheduledExecutorService scheduler) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.serverManager = serverManager;
+        this.scheduler = scheduler;
+        this.model = new DemandModel(plugin.getDataDirectory().resolve("demand.json"));
+    }
+
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        try {
+            model.load();
+        } catch (IOException e) {
+            logger.warn("Failed to load demand history, starting fresh: {}", e.getMessage());
+        }
+        task = scheduler.scheduleWithFixedDelay(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        save();
+    }
+
+    /**
+     * Records that a server saw players in the current hour.
+     *
+     * @param server The server players joined or left.
+     */
+    public void recordActivity(RegisteredServer server) {
+        model.recordActivity(server.getServerInfo().getName());
+    }
+
+    /**
+     * @param server The server to look up.
+     * @return The learned chance, between 0 and 1, that the server is used in the current hour.
+     */
+    public double currentDemand(RegisteredServer server) {
+        return model.predict(server.getServerInfo().getName(), ZonedDateTime.now());
+    }
+
+    /**
+     * Decides if an idle server should be kept running because players are expected soon.
+     *
+     * @param server The server about to be stopped.
+     * @return true if the auto shutdown should be put off.
+     */
+    public boolean holdsShutdown(RegisteredServer server) {
+        Configuration config = plugin.getConfig();
+        if (!config.getPrewarm(server)) {
+            return false;
+        }
+        String serverName = server.getServerInfo().getName();
+        ZonedDateTime now = ZonedDateTime.now();
+        double demand = Math.max(model.predict(serverName, now),
+                model.predict(serverName, now.plusMinutes(config.getPrewarmLeadTime())));
+        if (demand < config.getPrewarmConfidence()) {
+            return false;
+        }
+        if (config.isPrewarmDryRun()) {
+            logger.info("[dry run] Would keep {} running, expected demand {}%", serverName, percent(demand));
+            return false;
+        }
+        logger.info("Keeping {} running, expected demand {}%", serverName, percent(demand));
+        return true;
+    }
+
+    private void tick() {
+        try {
+            Configuration config = plugin.getConfig();
+            ZonedDateTime now = ZonedDateTime.now();
+            Iterable<String> serverNames = plugin.getProxy().getAllServers().stream()
+                    .map(server -> server.getServerInfo().getName()).toList();
+            for (RegisteredServer server : plugin.getProxy().getAllServers()) {
+                // players still on a server count as demand even if nobody joined this hour
+                if (!server.getPlayersConnected().isEmpty()) {
+                    recordActivity(server);
+                }
+            }
+            if (model.roll(now, serverNames, config.getPrewarmSmoothing())) {
+                save();
+            }
+
+            ZonedDateTime ahead = now.plusMinutes(config.getPrewarmLeadTime());
+            for (RegisteredServer server : plugin.getProxy().getAllServers()) {
+                if (!config.getPrewarm(server)) {
+                    continue;
+                }
+                String serverName = server.getServerInfo().getName();
+                double demand = model.predict(serverName, ahead);
+                ServerStatus status = serverManager.getServerStatus(server);
+                if (demand < config.getPrewarmConfidence() || !(status.is(ServerStatus.Status.STOPPED) || status.isHibernated())) {
+                    continue;
+                }
+
+                if (config.isPrewarmDryRun()) {
+                    logger.info("[dry run] Would start {}, expected demand {}% at {}", serverName, percent(demand), ahead.toLocalTime().withNano(0));
+                    continue;
+                }
+                if (status.isHibernated()) {
+                    logger.info("Thawing {} ahead of expected demand ({}%)", serverName, percent(demand));
+                    serverManager.thawServer(server).thenAccept(thawed -> {
+                        if (thawed) {
+                            serverManager.scheduleShutdownServer(server);
+                        }
+                    });
+                    continue;
+                }
+                logger.info("Starting {} ahead of expected demand ({}%)", serverName, percent(demand));
+                serverManager.startServer(server).whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        logger.error("Failed to prewarm server {}: {}", serverName, ex.getMessage());
+                    } else {
+                        // nobody is waiting on it, stop again if nobody shows up
+                        serverManager.scheduleShutdownServer(server);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            logger.error("Prewarm check failed: {}", e.getMessage());
+        }
+    }
+
+    private void save() {
+        try {
+            model.save();
+        } catch (IOException e) {
+            logger.warn("Failed to save demand history: {}", e.getMessage());
+        }
+    }
+
+    private static long percent(double demand) {
+        return Math.round(demand * 100);
+    }
+}
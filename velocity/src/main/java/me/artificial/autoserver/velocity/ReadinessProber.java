@@ -0,0 +1,104 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import me.artificial.autoserver.common.StatusProber;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a starting server to become ready without holding a thread while it waits.
+ * <p>
+ * Every attempt first checks that the game port accepts a TCP connection, which is cheap and fails
+ * instantly while nothing is listening, and only then does a full status ping. Attempts are spaced
+ * with exponential backoff plus jitter, capped so a server is noticed within a second of being ready.
+ */
+public class ReadinessProber {
+    private static final long INITIAL_DELAY_MS = 250;
+    private static final long MAX_DELAY_MS = 1000;
+    private static final double JITTER = 0.2;
+    private static final long CONNECT_TIMEOUT_MS = 1000;
+
+    private final AutoServerLogger logger;
+    private final ServerManager serverManager;
+    private final StatusProber statusProber;
+    private final StartupHistory startupHistory;
+    private final ScheduledExecutorService scheduler;
+
+    public ReadinessProber(AutoServerLogger logger, ServerManager serverManager, StatusProber statusProber,
+                           StartupHistory startupHistory, ScheduledExecutorService scheduler) {
+        this.logger = logger;
+        this.serverManager = serverManager;
+        this.statusProber = statusProber;
+        this.startupHistory = startupHistory;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Probes the server until it answers a status ping or the deadline passes.
+     *
+     * @param server The server to probe.
+     * @param timeout Maximum time to wait for the server.
+     * @param firstProbe Time before the first attempt, usually how long the server took to open its port before.
+     * @return A CompletableFuture that completes with true when the server is ready, false if the deadline passed first.
+     */
+    public CompletableFuture<Boolean> awaitReady(RegisteredServer server, Duration timeout, Duration firstProbe) {
+        CompletableFuture<Boolean> ready = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        // never wait so long the only attempt falls past the deadline
+        long firstDelay = Math.max(INITIAL_DELAY_MS, Math.min(firstProbe.toMillis(), timeout.toMillis() - MAX_DELAY_MS));
+        logger.info("Waiting up to {} seconds for server {} to become ready, first check in {} ms.",
+                timeout.toSeconds(), server.getServerInfo().getName(), firstDelay);
+        schedule(server, ready, deadline, 0, firstDelay);
+        return ready;
+    }
+
+    private void schedule(RegisteredServer server, CompletableFuture<Boolean> ready, long deadline, int attempt, long delayMs) {
+        if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) > deadline) {
+            logger.warn("Server {} did not become ready in time.", server.getServerInfo().getName());
+            ready.complete(false);
+            return;
+        }
+        scheduler.schedule(() -> probe(server, ready, deadline, attempt), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(RegisteredServer server, CompletableFuture<Boolean> ready, long deadline, int attempt) {
+        String serverName = server.getServerInfo().getName();
+        acceptsConnections(server.getServerInfo().getAddress())
+                .thenCompose(accepting -> {
+                    if (!accepting) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    logger.debug("Server {} is accepting connections, checking status.", serverName);
+                    startupHistory.record(serverName, StartupHistory.Phase.PORT_OPEN);
+                    // the port just opened so an earlier result says nothing, wait for a new ping
+                    return serverManager.isServerOnline(server, Duration.ZERO);
+                })
+                .whenComplete((online, ex) -> {
+                    if (ex == null && online) {
+                        logger.info("Server {} is {}online{}. Moving queued players...", serverName, AnsiColors.GREEN, AnsiColors.RESET);
+                        ready.complete(true);
+                        return;
+                    }
+                    long delay = nextDelay(attempt + 1);
+                    logger.trace("Server {} not ready after attempt {}, next probe in {} ms.", serverName, attempt + 1, delay);
+                    schedule(server, ready, deadline, attempt + 1, delay);
+                });
+    }
+
+    private static long nextDelay(int attempt) {
+        long base = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(attempt, 10));
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return (long) (base * jitter);
+    }
+
+    private CompletableFuture<Boolean> acceptsConnections(InetSocketAddress address) {
+        return statusProber.probe(address, Duration.ofMillis(CONNECT_TIMEOUT_MS), false)
+                .thenApply(StatusProber.Result::isOnline);
+    }
+}
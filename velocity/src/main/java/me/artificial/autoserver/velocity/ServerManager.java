@@ -4,34 +4,119 @@ import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.scheduler.ScheduledTask;
 import com.velocitypowered.api.scheduler.Scheduler;
+import me.artificial.autoserver.common.NetworkCommands;
+import me.artificial.autoserver.common.StatusProber;
+import me.artificial.autoserver.velocity.startable.ControlSession;
 import me.artificial.autoserver.velocity.startable.LocalStartable;
+import me.artificial.autoserver.velocity.startable.ProcessSupervisor;
 import me.artificial.autoserver.velocity.startable.RemoteStartable;
 import me.artificial.autoserver.velocity.startable.Startable;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A ServerManager class that manages the state of servers, including starting, stopping,
  * and checking the status of servers.
  */
 public class ServerManager {
+    private static final long PROBE_TIMEOUT = 5000;
     private final AutoServerLogger logger;
     private final AutoServer plugin;
-    private final HashSet<String> startingServers = new HashSet<>();
-    private final HashMap<Player, String> queuePlayers = new HashMap<>();
+    private final Map<String, JoinQueue> joinQueues = new ConcurrentHashMap<>();
+    private final Map<UUID, String> queuedFor = new ConcurrentHashMap<>();
+    private final Map<String, PlayerTransfer> activeTransfers = new ConcurrentHashMap<>();
     private final Map<String, ServerStatus> serverStatusCache = new ConcurrentHashMap<>();
     private final Map<String, ScheduledTask> shutdownScheduledTask = new ConcurrentHashMap<>();
+    private final Map<String, Startable> startables = new ConcurrentHashMap<>();
+    private final Map<String, ControlSession> controlSessions = new ConcurrentHashMap<>();
+    private final PingCoalescer pingCoalescer = new PingCoalescer();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService bootExecutor;
+    private final StatusProber statusProber;
+    private final ReadinessProber readinessProber;
+    private final StopWatcher stopWatcher;
+    private final HealthMonitor healthMonitor;
+    private final Prewarmer prewarmer;
+    private final StartupHistory startupHistory;
 
     public ServerManager(AutoServer plugin) {
         this.plugin = plugin;
         this.logger = plugin.getLogger();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AutoServer-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // one-shot boot connections block until the server is ready, keep them off the common pool
+        AtomicInteger bootThreads = new AtomicInteger();
+        this.bootExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "AutoServer-Boot-" + bootThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.statusProber = new StatusProber("AutoServer-StatusProber",
+                    e -> logger.error("Status prober stopped, servers will show as offline: {}", e.getMessage(), e));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open status prober: " + e.getMessage(), e);
+        }
+        this.startupHistory = new StartupHistory(plugin.getDataDirectory().resolve("startup.json"));
+        try {
+            startupHistory.load();
+        } catch (IOException e) {
+            logger.warn("Failed to load startup history: {}", e.getMessage());
+        }
+        this.readinessProber = new ReadinessProber(logger, this, statusProber, startupHistory, scheduler);
+        this.stopWatcher = new StopWatcher(logger, statusProber, scheduler);
+        this.healthMonitor = new HealthMonitor(plugin, this, scheduler);
+        this.healthMonitor.start();
+        this.prewarmer = new Prewarmer(plugin, this, scheduler);
+        this.prewarmer.start();
+        // connect to remote hosts up front so the first start does not wait for the handshake
+        for (RegisteredServer server : plugin.getProxy().getAllServers()) {
+            getControlSession(server);
+        }
+    }
+
+    /**
+     * Changes how many health check pings may be in flight at once.
+     *
+     * @param maxConcurrentProbes The new limit.
+     */
+    public void setMaxConcurrentProbes(long maxConcurrentProbes) {
+        healthMonitor.setMaxConcurrentProbes(maxConcurrentProbes);
+    }
+
+    /**
+     * Stops background work owned by the server manager.
+     */
+    public void shutdown() {
+        // never leave a server frozen behind once nobody is around to thaw it
+        for (RegisteredServer server : plugin.getProxy().getAllServers()) {
+            if (getServerStatus(server).isHibernated() && getServerStrategy(server) instanceof LocalStartable local) {
+                local.resume().join();
+            }
+        }
+        healthMonitor.stop();
+        prewarmer.stop();
+        controlSessions.values().forEach(ControlSession::close);
+        scheduler.shutdownNow();
+        bootExecutor.shutdownNow();
+        statusProber.close();
+        saveStartupHistory();
     }
 
     /**
@@ -42,15 +127,26 @@ public class ServerManager {
      *         or completes exceptionally if an error occurs or the server is already running.
      */
     public CompletableFuture<String> startServer(RegisteredServer server) {
-        // Check if already starting
+        // Claim the start, only one caller can move the server into STARTING
         String serverName = server.getServerInfo().getName();
-        if (startingServers.contains(serverName)) {
+        ServerStatus status = getServerStatus(server);
+        if (status.isHibernated()) {
+            return thawServer(server).thenApply(thawed -> {
+                if (!thawed) {
+                    throw new IllegalStateException("Server did not come back after thawing.");
+                }
+                return "Server thawed.";
+            });
+        }
+        if (!status.beginStart()) {
+            if (status.isStopping()) {
+                logger.debug("Server {} is stopping, refusing to start", serverName);
+                return CompletableFuture.failedFuture(new IllegalStateException("Server is currently stopping."));
+            }
             logger.debug("Server {} is already starting", serverName);
             return CompletableFuture.completedFuture("Server is already starting.");
         }
 
-        startingServers.add(serverName);
-
         logger.debug("Attempting to start server: {}", serverName);
 
         // Determine start strategy
@@ -61,16 +157,24 @@ public class ServerManager {
                 .thenCompose(isOnline -> {
                     if (isOnline) {
                         // Already running
+                        status.finishStart(true);
                         moveQueuedPlayersToServer(server);
                         return CompletableFuture.completedFuture("Server already running");
                     }
 
                     // Finally start the server using the given strategy
+                    startupHistory.begin(serverName);
+                    // Most servers take about as long as last time, no point probing much earlier
+                    Duration firstProbe = startupHistory.percentile(serverName, StartupHistory.Phase.PORT_OPEN, 50)
+                            .orElse(Duration.ZERO);
                     return startableStrategy.start()
-                            .thenCompose(result -> waitForServerToBecomeResponsive(server)
+                            .thenCompose(result -> readinessProber.awaitReady(server, Duration.ofSeconds(plugin.getConfig().getStartupTimeout(server)), firstProbe)
                                     .thenApply(isResponsive -> {
                                         if (isResponsive) {
                                             // Return the result after server becomes responsive.
+                                            startupHistory.record(serverName, StartupHistory.Phase.READY);
+                                            saveStartupHistoryLater();
+                                            status.finishStart(true);
                                             moveQueuedPlayersToServer(server);
                                             return "Server started and is responsive.";
                                         } else {
@@ -81,9 +185,11 @@ public class ServerManager {
                 })
                 .whenComplete((result, ex) -> {
                     // clean up
-                    startingServers.remove(serverName);
                     if (ex != null) {
+                        startupHistory.abort(serverName);
+                        status.finishStart(false);
                         logger.error("Failed to start server: {}", ex.getMessage());
+                        failQueuedPlayers(server);
                     }
                 });
     }
@@ -96,15 +202,22 @@ public class ServerManager {
      *         or completes exceptionally if an error occurs or the server is already stopped.
      */
     public CompletableFuture<String> stopServer(RegisteredServer server) {
-        // Check if already stopping
+        // Claim the stop, only one caller can move the server into STOPPING
         String serverName = server.getServerInfo().getName();
-        if (getServerStatus(server).isStopping()) {
+        ServerStatus status = getServerStatus(server);
+        if (status.isHibernated()) {
+            // a frozen server cannot run its stop command, thaw it first
+            return thawServer(server).thenCompose(thawed -> stopServer(server));
+        }
+        if (!status.beginStop()) {
+            if (status.isStarting()) {
+                logger.debug("Server {} is starting, refusing to stop", serverName);
+                return CompletableFuture.failedFuture(new IllegalStateException("Server is currently starting."));
+            }
             logger.debug("Server {} is already stopping", serverName);
             return CompletableFuture.completedFuture("Server is already stopping.");
         }
 
-        getServerStatus(server).setStatus(ServerStatus.Status.STOPPING);
-
         logger.info("Attempting to stop server: {}", serverName);
         Startable startableStrategy = getServerStrategy(server);
 
@@ -115,102 +228,316 @@ public class ServerManager {
                         return CompletableFuture.completedFuture("Server already stopped");
                     }
 
+                    // Grab the process before stopping, it is gone once the server exits
+                    Optional<ProcessHandle> process = startableStrategy instanceof LocalStartable local
+                            ? local.getProcess()
+                            : Optional.empty();
+
                     // Finally stop the server using the given strategy
                     return startableStrategy.stop()
-                            .thenCompose(result -> {
-                                long shutdownDelay = plugin.getConfig().getShutdownDelay(server);
-
-                                // Delay a little bit before trying to ping to give server time to stop
-                                try {
-                                    logger.info("Sleeping for {} seconds before checking if server has stopped.", shutdownDelay);
-                                    Thread.sleep(shutdownDelay * 1000);
-                                } catch (InterruptedException e) {
-                                    logger.warn("Stop delay sleep interrupted: {}", e.getMessage());
-                                    Thread.currentThread().interrupt();
+                            .thenCompose(result -> stopWatcher.awaitStopped(server,
+                                    Duration.ofSeconds(plugin.getConfig().getStopTimeout(server)),
+                                    process,
+                                    plugin.getConfig().getForceStop(server)))
+                            .thenApply(stopped -> {
+                                if (!stopped) {
+                                    throw new RuntimeException("Failed to stop server.");
                                 }
-
-
-                                return isServerOnline(server).thenApply(isOnline2 -> {
-                                        if (isOnline2) {
-                                            throw new RuntimeException("Failed to stop server.");
-                                        } else {
-                                            return "Server stopped.";
-                                        }
-                                    });
+                                getServerStatus(server).recordCheck(false);
+                                // the last ping still says online, a start right after must not trust it
+                                pingCoalescer.forget(serverName);
+                                return "Server stopped.";
                             });
                 })
                 .whenComplete((result, ex) -> {
                     // clean up
                     if (ex != null) {
                         logger.error("Failed to stop server: {}", ex.getMessage());
-                        getServerStatus(server).setStatus(ServerStatus.Status.UNKNOWN);
+                        if (startableStrategy instanceof LocalStartable local) {
+                            local.stopFailed();
+                        }
+                    }
+                    status.finishStop(ex == null);
+                });
+    }
+
+    /**
+     * Freezes an idle local server instead of stopping it, so the next player does not wait for a cold start.
+     * Falls back to a normal stop when the server cannot be frozen.
+     *
+     * @param server The server to hibernate.
+     * @return A CompletableFuture that completes with a message describing the result.
+     */
+    public CompletableFuture<String> hibernateServer(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        if (!(getServerStrategy(server) instanceof LocalStartable local) || !local.canSuspend()) {
+            logger.warn("Server {} can not be hibernated, only Linux servers started by AutoServer can. Stopping instead.", serverName);
+            return stopServer(server);
+        }
+        ServerStatus status = getServerStatus(server);
+        if (!status.beginHibernate()) {
+            logger.debug("Server {} is {}, not hibernating", serverName, status.getDisplayName());
+            return CompletableFuture.completedFuture("Server is not running.");
+        }
+
+        logger.info("Hibernating server: {}", serverName);
+        return local.suspend().thenCompose(frozen -> {
+            if (frozen) {
+                return CompletableFuture.completedFuture("Server hibernated.");
+            }
+            // parts of the tree may have been frozen, wake it back up before stopping it properly
+            logger.warn("Failed to freeze server {}, stopping instead.", serverName);
+            return thawServer(server).thenCompose(thawed -> stopServer(server));
+        });
+    }
+
+    /**
+     * Wakes a hibernated server and moves any queued players once it answers a ping again.
+     *
+     * @param server The server to thaw.
+     * @return A CompletableFuture that completes with true if the server is running again.
+     */
+    public CompletableFuture<Boolean> thawServer(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        ServerStatus status = getServerStatus(server);
+        if (!status.beginThaw()) {
+            return isServerResponsive(server);
+        }
+        if (!(getServerStrategy(server) instanceof LocalStartable local)) {
+            status.finishStart(false);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        long started = System.nanoTime();
+        return local.resume()
+                .thenCompose(resumed -> resumed ? isServerOnline(server, Duration.ZERO) : CompletableFuture.completedFuture(false))
+                .handle((online, ex) -> {
+                    boolean running = ex == null && online;
+                    status.finishStart(running);
+                    if (running) {
+                        logger.info("Server {} thawed in {} ms", serverName, (System.nanoTime() - started) / 1_000_000);
+                        moveQueuedPlayersToServer(server);
                     } else {
-                        getServerStatus(server).setStatus(ServerStatus.Status.STOPPED);
+                        logger.warn("Server {} did not come back after thawing, it will be started normally", serverName);
                     }
+                    return running;
                 });
     }
 
+    /**
+     * Called when a server process started by AutoServer exits without being asked to stop.
+     *
+     * @param server The server whose process exited.
+     * @param exitCode Exit code of the process.
+     */
+    public void processExited(RegisteredServer server, int exitCode) {
+        ServerStatus status = getServerStatus(server);
+        if (status.isHibernated() && status.beginThaw()) {
+            // killed while frozen, nothing left to thaw
+            status.finishStart(false);
+        }
+        status.recordCheck(false);
+        cancelShutdownServer(server);
+        healthMonitor.requestCheck(server);
+    }
+
+    /**
+     * @param server The server to look up.
+     * @return The supervisor of the local process of the server, if AutoServer started one.
+     */
+    public Optional<ProcessSupervisor> getSupervisor(RegisteredServer server) {
+        if (getServerStrategy(server) instanceof LocalStartable local) {
+            return local.getSupervisor();
+        }
+        return Optional.empty();
+    }
+
     /**
      * Checks if the specified server is online (i.e., fully operational and ready to accept connections).
+     * Concurrent callers share one ping and a result within the configured grace window is reused.
      *
      * @param server The server to check.
      * @return A CompletableFuture that completes with true if the server is online, false otherwise.
      */
     public CompletableFuture<Boolean> isServerOnline(RegisteredServer server) {
-        return pingServer(server, 5000);
+        return isServerOnline(server, Duration.ofMillis(plugin.getConfig().getHealthCheckPingGrace()));
     }
 
     /**
-     * Performs a quick check on server responsiveness, including checking cache and optionally pinging the server.
-     * The state of the server may not be guaranteed with this check.
+     * Checks if the specified server is online, sharing a ping already in flight.
      *
      * @param server The server to check.
-     * @return A CompletableFuture that completes with true if the server is responsive, false otherwise.
+     * @param maxAge How old a previous result may be and still be used, zero to wait for a new ping.
+     * @return A CompletableFuture that completes with true if the server is online, false otherwise.
      */
-    public CompletableFuture<Boolean> isServerResponsive(RegisteredServer server) {
+    public CompletableFuture<Boolean> isServerOnline(RegisteredServer server, Duration maxAge) {
+        return pingCoalescer.ping(server.getServerInfo().getName(), maxAge, () -> pingServer(server, PROBE_TIMEOUT));
+    }
+
+    /**
+     * Estimates how long until a server is ready, from the median of its past starts.
+     * Falls back to the configured startup delay for a server that has never been timed.
+     *
+     * @param server The server to estimate.
+     * @return Expected time until the server is ready.
+     */
+    public Duration estimateStartup(RegisteredServer server) {
         String serverName = server.getServerInfo().getName();
-        ServerStatus cachedStatus = getServerStatus(server);
+        Optional<Duration> median = startupHistory.percentile(serverName, StartupHistory.Phase.READY, 50);
+        if (median.isEmpty()) {
+            return Duration.ofSeconds(plugin.getConfig().getStartUpDelay(server));
+        }
+        Duration elapsed = getServerStatus(server).isStarting() ? startupHistory.elapsed(serverName) : Duration.ZERO;
+        Duration remaining = median.get().minus(elapsed);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
 
-        if (cachedStatus.is(ServerStatus.Status.STOPPED)) {
-            logger.debug("Cache check for server '{}' is OFFLINE", serverName);
-            return CompletableFuture.completedFuture(false);
+    /**
+     * Records a player arriving on a server, the first player after a start completes its timing. A
+     * first player arriving later than the startup timeout is not counted.
+     *
+     * @param server The server the player connected to.
+     */
+    public void playerConnected(RegisteredServer server) {
+        Duration limit = Duration.ofSeconds(plugin.getConfig().getStartupTimeout(server));
+        if (startupHistory.record(server.getServerInfo().getName(), StartupHistory.Phase.FIRST_PLAYER, limit)) {
+            saveStartupHistoryLater();
         }
+    }
+
+    public StartupHistory getStartupHistory() {
+        return startupHistory;
+    }
+
+    public Prewarmer getPrewarmer() {
+        return prewarmer;
+    }
+
+    /**
+     * @param server The server to look up.
+     * @return How many pings of the server were sent and how many callers shared them.
+     */
+    public PingCoalescer.Stats getPingStats(RegisteredServer server) {
+        return pingCoalescer.stats(server.getServerInfo().getName());
+    }
+
+    /**
+     * Checks the specified server with a handshake and status request on the shared {@link StatusProber}.
+     * Cheaper than a full Velocity ping and a refused connection is reported straight away.
+     *
+     * @param server The server to check.
+     * @return A CompletableFuture that completes with true if the server answered, false otherwise.
+     */
+    public CompletableFuture<Boolean> probeServer(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        return statusProber.probe(server.getServerInfo().getAddress(), Duration.ofMillis(PROBE_TIMEOUT), true)
+                .thenApply(result -> {
+                    logger.trace("Probe {}: {}", serverName, result);
+                    getServerStatus(server).recordCheck(result.isOnline());
+                    return result.isOnline();
+                });
+    }
+
+    /**
+     * Performs a quick check on server responsiveness using only cached state, the server is never pinged.
+     * A server is only considered responsive if it has players or was seen online within the cache ttl.
+     * Anything else goes through the start sequence, which confirms the state with a real ping.
+     *
+     * @param server The server to check.
+     * @return A CompletableFuture that completes with true if the server is responsive, false otherwise.
+     */
+    public CompletableFuture<Boolean> isServerResponsive(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
         if (!server.getPlayersConnected().isEmpty()) {
             logger.debug("Players detected on server '{}', assuming ONLINE", serverName);
             return CompletableFuture.completedFuture(true);
         }
 
-        // cache not valid need to ping
-        return pingServer(server, 50);
+        ServerStatus cachedStatus = getServerStatus(server);
+        boolean fresh = cachedStatus.isFresh(Duration.ofSeconds(plugin.getConfig().getHealthCheckCacheTtl()));
+        boolean online = fresh && cachedStatus.is(ServerStatus.Status.RUNNING);
+        logger.debug("Cache check for server '{}' is {} (fresh: {})", serverName, cachedStatus.getDisplayName(), fresh);
+        return CompletableFuture.completedFuture(online);
     }
 
     /**
-     * Retrieves the current status of the specified server.
+     * Retrieves the cached status of the specified server, kept up to date by the {@link HealthMonitor}.
+     * Never blocks, a server that has not been checked yet is UNKNOWN and is checked on the next tick.
      *
      * @param server The server whose status is to be retrieved.
      * @return The current status of the server (e.g., ONLINE, OFFLINE, UNKNOWN).
      */
     public ServerStatus getServerStatus(RegisteredServer server) {
         String serverName = server.getServerInfo().getName();
-        if (!serverStatusCache.containsKey(serverName)) {
-            serverStatusCache.put(serverName, new ServerStatus());
-            try {
-                isServerOnline(server).get();
-            } catch (InterruptedException | ExecutionException ignored) {
+        ServerStatus status = serverStatusCache.get(serverName);
+        if (status == null) {
+            ServerStatus created = new ServerStatus();
+            status = serverStatusCache.putIfAbsent(serverName, created);
+            if (status == null) {
+                // first time seeing this server, find out where it is
+                status = created;
+                healthMonitor.requestCheck(server);
             }
         }
 
-        return serverStatusCache.get(serverName);
+        return status;
     }
 
     /**
      * Queues a player to join a server once it's started and available.
+     * A player waits for at most one server, queuing for a new server removes them from the old one.
      *
      * @param player The player to queue.
-     * @param serverName The name of the server the player is waiting to join.
+     * @param server The server the player is waiting to join.
+     * @return The 1 based position of the player in the queue, or -1 if the queue is full.
      */
-    public void queuePlayerForServerJoin(Player player, String serverName) {
-        queuePlayers.put(player, serverName);
+    public int queuePlayerForServerJoin(Player player, RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        UUID playerId = player.getUniqueId();
+
+        String previous = queuedFor.put(playerId, serverName);
+        if (previous != null && !previous.equals(serverName)) {
+            JoinQueue previousQueue = joinQueues.get(previous);
+            if (previousQueue != null) {
+                previousQueue.remove(playerId);
+            }
+        }
+
+        JoinQueue queue = joinQueues.computeIfAbsent(serverName, name -> new JoinQueue());
+        JoinQueue.Offer offer = queue.offer(player,
+                plugin.getConfig().getMaxQueueLength(server),
+                plugin.getConfig().getQueueOverflow(server));
+
+        if (offer.evicted() != null) {
+            Player evicted = offer.evicted();
+            queuedFor.remove(evicted.getUniqueId(), serverName);
+            logger.debug("Queue for {} is full, dropped {}", serverName, evicted.getUsername());
+            Messenger.send(evicted, plugin.getConfig().getMessage("queueFull").orElse(""), serverName);
+        }
+        if (!offer.accepted()) {
+            queuedFor.remove(playerId, serverName);
+            logger.debug("Queue for {} is full, rejected {}", serverName, player.getUsername());
+            return -1;
+        }
+
+        logger.debug("Player {} is #{} in queue for {}", player.getUsername(), offer.position(), serverName);
+        return offer.position();
+    }
+
+    /**
+     * Removes a player from whichever queue they are waiting in.
+     *
+     * @param player The player to remove.
+     */
+    public void removeQueuedPlayer(Player player) {
+        String serverName = queuedFor.remove(player.getUniqueId());
+        if (serverName == null) {
+            return;
+        }
+        JoinQueue queue = joinQueues.get(serverName);
+        if (queue != null && queue.remove(player.getUniqueId())) {
+            logger.debug("Removed {} from queue for {}", player.getUsername(), serverName);
+        }
     }
 
     /**
@@ -226,69 +553,186 @@ public class ServerManager {
             return;
         }
 
-        assert !shutdownScheduledTask.containsKey(server.getServerInfo().getName()) : "Server already has task scheduled for shutdown.";
-        logger.info("Scheduling shutdown of server {} in {}", server.getServerInfo().getName(), autoShutdownDelay);
-
-        Scheduler.TaskBuilder taskBuilder = plugin.getProxy().getScheduler()
-                .buildTask(plugin,() -> {
-                    assert server.getPlayersConnected().isEmpty() : "Server is not empty";
-                    stopServer(server).whenComplete((result, ex) -> {
-                        if (ex != null) {
-                            logger.error("error: {}", ex.getMessage());
-                        } else {
-                            logger.info("Message: {}", result);
+        String serverName = server.getServerInfo().getName();
+        // compute keeps the check and the insert atomic, an existing task is left alone
+        shutdownScheduledTask.compute(serverName, (name, existing) -> {
+            if (existing != null) {
+                logger.trace("Server {} is already scheduled to stop", serverName);
+                return existing;
+            }
+            logger.info("Scheduling shutdown of server {} in {}", serverName, autoShutdownDelay);
+
+            Scheduler.TaskBuilder taskBuilder = plugin.getProxy().getScheduler()
+                    .buildTask(plugin, () -> {
+                        shutdownScheduledTask.remove(serverName);
+                        if (!server.getPlayersConnected().isEmpty()) {
+                            logger.debug("Server {} is no longer empty, skipping auto shutdown", serverName);
+                            return;
                         }
-                    });
-                }).delay(Duration.ofSeconds(autoShutdownDelay));
+                        if (prewarmer.holdsShutdown(server)) {
+                            // try again after another full delay
+                            scheduleShutdownServer(server);
+                            return;
+                        }
+                        CompletableFuture<String> idle = "hibernate".equals(plugin.getConfig().getIdlePolicy(server))
+                                ? hibernateServer(server)
+                                : stopServer(server);
+                        idle.whenComplete((result, ex) -> {
+                            if (ex != null) {
+                                logger.error("error: {}", ex.getMessage());
+                            } else {
+                                logger.info("Message: {}", result);
+                            }
+                        });
+                    }).delay(Duration.ofSeconds(autoShutdownDelay));
 
-        ScheduledTask scheduledTask = taskBuilder.schedule();
-        shutdownScheduledTask.put(server.getServerInfo().getName(), scheduledTask);
+            return taskBuilder.schedule();
+        });
     }
 
     public void cancelShutdownServer(RegisteredServer server) {
         String serverName = server.getServerInfo().getName();
-        if (shutdownScheduledTask.containsKey(serverName)) {
+        ScheduledTask task = shutdownScheduledTask.remove(serverName);
+        if (task != null) {
             logger.info("Cancelling auto shutdown: {}", serverName);
-            shutdownScheduledTask.get(serverName).cancel();
-            shutdownScheduledTask.remove(serverName);
+            task.cancel();
+        }
+    }
+
+    /**
+     * Starts a pending auto shutdown over with the delay now in the config, the new delay counts from
+     * now. Servers without a pending shutdown are left alone.
+     *
+     * @param server The server whose delay changed.
+     */
+    public void rescheduleShutdownServer(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        ScheduledTask task = shutdownScheduledTask.remove(serverName);
+        if (task == null) {
+            return;
         }
+        task.cancel();
+        logger.info("Auto shutdown delay of {} changed, rescheduling", serverName);
+        scheduleShutdownServer(server);
+    }
+
+    /**
+     * Drops the start strategy of a server whose connection settings changed, the next command talks
+     * to the Boot Listener with the settings now in the config. Sessions no server uses anymore are
+     * closed, requests still running on them fail.
+     *
+     * @param server The server whose connection settings changed.
+     */
+    public void reconnectServer(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        Startable previous = startables.get(serverName);
+        if (previous instanceof RemoteStartable) {
+            startables.remove(serverName, previous);
+        } else if (previous instanceof LocalStartable && plugin.getConfig().isRemoteServer(server).orElse(false)
+                && !getServerStatus(server).is(ServerStatus.Status.STOPPED)) {
+            logger.warn("{} is now remote but was started by the proxy, stop it by hand or restart the proxy to let go of it", serverName);
+        }
+
+        Set<String> inUse = new HashSet<>();
+        for (RegisteredServer other : plugin.getProxy().getAllServers()) {
+            sessionKey(other).ifPresent(inUse::add);
+        }
+        for (String key : List.copyOf(controlSessions.keySet())) {
+            if (!inUse.contains(key)) {
+                ControlSession session = controlSessions.remove(key);
+                if (session != null) {
+                    logger.debug("Closing control session {}, no server uses it anymore", key);
+                    session.close();
+                }
+            }
+        }
+        // connect up front like on startup
+        getControlSession(server);
     }
 
     public void validateServers(Collection<RegisteredServer> servers) {
         logger.trace("Validating Server status...");
+        // The health monitor keeps the cache fresh so no pings are needed here
+        Duration ttl = Duration.ofSeconds(plugin.getConfig().getHealthCheckCacheTtl());
         for (RegisteredServer server : servers) {
-            pingServer(server, 5000).thenApply((isOnline) -> {
-                if (isOnline && server.getPlayersConnected().isEmpty()) {
-                    String serverName = server.getServerInfo().getName();
-                    if (shutdownScheduledTask.containsKey(serverName)) {
-                        logger.trace("Server {} is already scheduled to stop", serverName);
-                        return null;
-                    }
+            ServerStatus status = getServerStatus(server);
+            if (status.is(ServerStatus.Status.RUNNING) && status.isFresh(ttl) && server.getPlayersConnected().isEmpty()) {
+                scheduleShutdownServer(server);
+            }
+        }
+    }
 
-                    scheduleShutdownServer(server);
-                }
-                return null;
-            });
+    /**
+     * Gets the control session to the Boot Listener of a remote server, opening it on first use.
+     * Servers on the same host and listener port share one session, as long as they use the same
+     * communicationVersion and security setting.
+     *
+     * @param server The server to look up.
+     * @return The control session, empty for local servers and servers using the legacy protocol.
+     */
+    public Optional<ControlSession> getControlSession(RegisteredServer server) {
+        Optional<String> key = sessionKey(server);
+        if (key.isEmpty()) {
+            return Optional.empty();
         }
+        InetSocketAddress address = new InetSocketAddress(server.getServerInfo().getAddress().getAddress(), plugin.getConfig().getPort(server).orElseThrow());
+        int communicationVersion = plugin.getConfig().getCommunicationVersion(server);
+        boolean securityEnabled = plugin.getConfig().getSecurity(server);
+        ControlSession session = controlSessions.computeIfAbsent(key.get(),
+                k -> new ControlSession(logger, address, communicationVersion, securityEnabled, plugin::getSecret, scheduler));
+        session.open();
+        return Optional.of(session);
     }
 
-    private Startable getServerStrategy(RegisteredServer server) {
+    /**
+     * @return The key of the control session a server uses, empty for local servers and servers using the legacy protocol.
+     */
+    private Optional<String> sessionKey(RegisteredServer server) {
         Optional<Boolean> remote = plugin.getConfig().isRemoteServer(server);
-        if (remote.isPresent() && remote.get()) {
-            return new RemoteStartable(plugin, server);
+        if (remote.isEmpty() || !remote.get() || plugin.getConfig().getCommunicationVersion(server) < 2) {
+            return Optional.empty();
+        }
+        Optional<Integer> port = plugin.getConfig().getPort(server);
+        if (port.isEmpty()) {
+            return Optional.empty();
         }
-        return new LocalStartable(plugin, server);
+        InetSocketAddress address = new InetSocketAddress(server.getServerInfo().getAddress().getAddress(), port.get());
+        // the security setting is part of the key, a session signs every frame the same way
+        return Optional.of(address.getHostString() + ":" + address.getPort() + "/v" + plugin.getConfig().getCommunicationVersion(server)
+                + (plugin.getConfig().getSecurity(server) ? "/signed" : "/plain"));
     }
 
-    private CompletableFuture<Boolean> pingServer(RegisteredServer server, int pingTimeout) {
+    /**
+     * Asks the Boot Listener of a remote server if the server is running.
+     *
+     * @param server The server to ask about.
+     * @return A CompletableFuture that completes with RUNNING, STOPPED, or UNKNOWN. Always UNKNOWN for local servers.
+     */
+    public CompletableFuture<String> queryListenerStatus(RegisteredServer server) {
+        if (getServerStrategy(server) instanceof RemoteStartable remote) {
+            return remote.queryStatus();
+        }
+        return CompletableFuture.completedFuture(NetworkCommands.UNKNOWN);
+    }
+
+    private Startable getServerStrategy(RegisteredServer server) {
+        // kept per server so a local server remembers the process it started
+        Optional<Boolean> remote = plugin.getConfig().isRemoteServer(server);
+        boolean isRemote = remote.isPresent() && remote.get();
+        return startables.compute(server.getServerInfo().getName(), (name, existing) -> {
+            if (isRemote) {
+                return existing instanceof RemoteStartable ? existing : new RemoteStartable(plugin, server, getControlSession(server).orElse(null), bootExecutor);
+            }
+            return existing instanceof LocalStartable ? existing : new LocalStartable(plugin, server);
+        });
+    }
+
+    private CompletableFuture<Boolean> pingServer(RegisteredServer server, long pingTimeout) {
         String serverName = server.getServerInfo().getName();
         logger.debug("Pinging server {}...", serverName);
         return server.ping().orTimeout(pingTimeout, TimeUnit.MILLISECONDS).thenApply(serverPing -> {
             logger.debug("ping success {} is {}online{}", serverName, AnsiColors.GREEN, AnsiColors.RESET);
-            if (!getServerStatus(server).isStopping()) {
-                // only update to running if not in a state of stopping
-                getServerStatus(server).setStatus(ServerStatus.Status.RUNNING);
-            }
+            getServerStatus(server).recordCheck(true);
             return true;
         }).exceptionallyCompose(e -> {
             logger.debug("ping failed for {}: {}", serverName, e.getMessage());
@@ -298,121 +742,108 @@ public class ServerManager {
             if (msg.contains("A packet did not decode successfully")) {
                 logger.debug("failed to decode packet, likely online trying socket connect");
                 // good chance the server is online check with a socket connect
-                return CompletableFuture.supplyAsync(() -> {
-                    try (Socket socket = new Socket()) {
-                        socket.connect(server.getServerInfo().getAddress());
-                        logger.warn("Socket connection to {} succeeded, treating as online.", serverName);
-                        if (!getServerStatus(server).isStopping()) {
-                            getServerStatus(server).setStatus(ServerStatus.Status.RUNNING);
-                        }
-                        return true;
-                    } catch (IOException ioe) {
-                        logger.warn("Socket connection to {} failed after ping error.", serverName);
-                        if (!getServerStatus(server).isStarting()) {
-                            getServerStatus(server).setStatus(ServerStatus.Status.STOPPED);
-                        }
-                        return false;
-                    }
-                });
+                return statusProber.probe(server.getServerInfo().getAddress(), Duration.ofMillis(pingTimeout), false)
+                        .thenApply(result -> {
+                            if (result.isOnline()) {
+                                logger.warn("Socket connection to {} succeeded, treating as online.", serverName);
+                            } else {
+                                logger.warn("Socket connection to {} failed after ping error.", serverName);
+                            }
+                            getServerStatus(server).recordCheck(result.isOnline());
+                            return result.isOnline();
+                        });
             }
 
             logger.debug("ping failed {} is {}offline{}", serverName, AnsiColors.RED, AnsiColors.RESET);
-            if (!getServerStatus(server).isStarting()) {
-                // only update to stopped if not in a state of starting
-                getServerStatus(server).setStatus(ServerStatus.Status.STOPPED);
-            }
+            getServerStatus(server).recordCheck(false);
             return CompletableFuture.completedFuture(false);
         });
     }
 
+    private void saveStartupHistory() {
+        try {
+            startupHistory.save();
+        } catch (IOException e) {
+            logger.warn("Failed to save startup history: {}", e.getMessage());
+        }
+    }
+
     /**
-     * Continuously pings the specified server until it becomes responsive and ready.
-     *
-     * @param server The server to ping.
-     * @return A CompletableFuture that completes with true when the server is ready, false if an error occurs or the server does not respond.
+     * Saves the startup history on the scheduler, keeping disk writes off event threads.
      */
-    private CompletableFuture<Boolean> waitForServerToBecomeResponsive(RegisteredServer server) {
-        return CompletableFuture.supplyAsync(() ->{
-            int retires = 10;
-            int delayBetweenRetries = 5; // seconds
-            long startupDelay = plugin.getConfig().getStartUpDelay(server);
-
-            // Delay a little bit before trying to ping to give server time to start
-            try {
-                logger.info("Sleeping for {} seconds before checking if server has started.", startupDelay);
-                Thread.sleep(startupDelay * 1000);
-            } catch (InterruptedException e) {
-                logger.warn("Ping delay sleep interrupted: {}", e.getMessage());
-                Thread.currentThread().interrupt();
-            }
+    private void saveStartupHistoryLater() {
+        try {
+            scheduler.execute(this::saveStartupHistory);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the history is saved on the way out
+        }
+    }
 
-            // ping server with retires
-            while (retires > 0) {
-                try {
-                    if (pingServer(server, 5000).get()) {
-                        logger.info("Server {} is {}online{}. Moving queued players...", server.getServerInfo().getName(), AnsiColors.GREEN, AnsiColors.RESET);
-                        return true;
-                    } else {
-                        logger.debug("Failed to ping server {}. Retrying in {} seconds.", server.getServerInfo().getName(), delayBetweenRetries);
-                    }
-                } catch (ExecutionException | InterruptedException e) {
-                    logger.debug("Failed to ping server {}: {}. Retrying in {} seconds.", server.getServerInfo().getName(), e.getMessage(), delayBetweenRetries);
-                }
+    /**
+     * Empties the queue of a server that failed to start, letting each waiting player know.
+     *
+     * @param server The server that failed to start.
+     */
+    void failQueuedPlayers(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        JoinQueue queue = joinQueues.get(serverName);
+        if (queue == null) {
+            return;
+        }
 
-                retires--;
-                if (retires > 0) {
-                    try {
-                        Thread.sleep(delayBetweenRetries * 1000L);
-                    } catch (InterruptedException e) {
-                        logger.warn("Ping retry sleep interrupted: {}", e.getMessage());
-                        Thread.currentThread().interrupt();
-                    }
-                }
+        for (Player player : queue.drain()) {
+            queuedFor.remove(player.getUniqueId(), serverName);
+            if (!player.isActive()) {
+                continue;
             }
+            if (player.getCurrentServer().isEmpty()) {
+                player.disconnect(Component.text("Failed to start server " + serverName).color(NamedTextColor.RED));
+            } else {
+                Messenger.send(player, plugin.getConfig().getMessage("failed").orElse(""), serverName);
+            }
+        }
+    }
 
-            return false;
-        });
+    /**
+     * Forgets which server a player was queued for once they have been taken off the queue.
+     *
+     * @param player The player that left the queue.
+     * @param serverName The server the player was queued for.
+     */
+    void releaseQueuedPlayer(Player player, String serverName) {
+        queuedFor.remove(player.getUniqueId(), serverName);
     }
 
     /**
      * Moves all players from the queue to the specified server once the server has started and is ready.
+     * Players are sent in paced batches, see {@link PlayerTransfer}.
      *
      * @param server The server to which queued players will be moved.
      */
     private void moveQueuedPlayersToServer(RegisteredServer server) {
-        queuePlayers.forEach((player, serverName) -> {
-            if (serverName.equals(server.getServerInfo().getName())) {
-                if (player.isActive()) {
-                    // Notify the player
-                    if (player.getCurrentServer().isPresent()) {
-                        Messenger.send(player, plugin.getConfig().getMessage("notify").orElse(""), serverName);
-                        // Schedule the connection request to run after 5 seconds
-                        plugin.getProxy().getScheduler().buildTask(plugin, () -> {
-                            plugin.internalTransfer(player);
-                            player.createConnectionRequest(server).connect().whenComplete((result, throwable) -> {
-                                if (throwable != null) {
-                                    Messenger.send(player, plugin.getConfig().getMessage("failed").orElse(""), serverName);
-                                    logger.error("Failed to connect player to server {}", throwable.getMessage());
-                                } else {
-                                    logger.info("Player {} successfully moved to server {}", player.getUsername(), serverName);
-                                }
-                                queuePlayers.remove(player);
-                            });
-                        }).delay(5, TimeUnit.SECONDS).schedule();
-                    } else {
-                        // Not connected to a server so want to connect fast
-                        player.createConnectionRequest(server).connect().whenComplete((result, throwable) -> {
-                            if (throwable != null) {
-                                Messenger.send(player, plugin.getConfig().getMessage("failed").orElse(""), serverName);
-                                logger.error("Failed to connect player to server {}", throwable.getMessage());
-                            } else {
-                                logger.info("Player {} successfully moved to server {}", player.getUsername(), serverName);
-                            }
-                            queuePlayers.remove(player);
-                        });
-                    }
+        String serverName = server.getServerInfo().getName();
+        JoinQueue queue = joinQueues.get(serverName);
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
 
-                }
+        PlayerTransfer transfer = new PlayerTransfer(plugin, this, server, queue);
+        if (activeTransfers.putIfAbsent(serverName, transfer) != null) {
+            logger.debug("Transfer to {} already in progress", serverName);
+            return;
+        }
+
+        for (Player player : queue.players()) {
+            if (player.isActive() && player.getCurrentServer().isPresent()) {
+                Messenger.send(player, plugin.getConfig().getMessage("notify").orElse(""), serverName);
+            }
+        }
+
+        transfer.begin().whenComplete((result, ex) -> {
+            activeTransfers.remove(serverName, transfer);
+            // pick up anyone that joined the queue while the last batch was going out
+            if (!queue.isEmpty() && getServerStatus(server).is(ServerStatus.Status.RUNNING)) {
+                moveQueuedPlayersToServer(server);
             }
         });
     }
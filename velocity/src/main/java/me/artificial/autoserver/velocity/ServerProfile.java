@@ -0,0 +1,225 @@
+package me.artificial.autoserver.velocity;
+
+import com.moandjiezana.toml.Toml;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The settings of one server from the {@code [servers.<name>]} table, read once when the config is
+ * loaded. Defaults are filled in here so lookups on the proxy never touch the TOML tree.
+ */
+public final class ServerProfile {
+    private static final long DEFAULT_START_UP_DELAY = 60L;
+    private static final long DEFAULT_STARTUP_TIMEOUT_MARGIN = 50L;
+    private static final long DEFAULT_SHUTDOWN_DELAY = 5L;
+    private static final long DEFAULT_STOP_TIMEOUT_MARGIN = 55L;
+    private static final int DEFAULT_REMOTE_PORT = 8080;
+    private static final long DEFAULT_COMMUNICATION_VERSION = 2L;
+    private static final long DEFAULT_AUTO_SHUTDOWN_DELAY = -1L;
+    private static final long DEFAULT_MAX_QUEUE_LENGTH = -1L;
+    private static final long DEFAULT_TRANSFER_BATCH_SIZE = 5L;
+    private static final long DEFAULT_TRANSFER_INTERVAL = 2L;
+    private static final long DEFAULT_TRANSFER_RETRIES = 3L;
+    private static final long DEFAULT_TRANSFER_RETRY_DELAY = 2L;
+    private static final long DEFAULT_CONSOLE_LINES = 200L;
+
+    private final Map<String, Object> settings;
+    // kept as Optionals so the getters of Configuration hand them out without allocating
+    private final Optional<String> path;
+    private final Optional<Boolean> preserveQuotes;
+    private final Optional<String> startCommand;
+    private final Optional<String> stopCommand;
+    private final Optional<Boolean> remote;
+    private final Optional<Integer> port;
+    private final boolean security;
+    private final long startUpDelay;
+    private final long startupTimeout;
+    private final long shutdownDelay;
+    private final long stopTimeout;
+    private final boolean forceStop;
+    private final long autoShutdownDelay;
+    private final long maxQueueLength;
+    private final JoinQueue.Overflow queueOverflow;
+    private final long transferBatchSize;
+    private final long transferInterval;
+    private final long transferRetries;
+    private final long transferRetryDelay;
+    private final int communicationVersion;
+    private final boolean useStdin;
+    private final long consoleLines;
+    private final String idlePolicy;
+    private final Optional<String> remoteServer;
+    private final boolean prewarm;
+
+    /**
+     * @param table The table of the server, an empty table for a server missing from the config.
+     */
+    ServerProfile(Toml table) {
+        this.settings = table.toMap();
+        this.path = Optional.ofNullable(table.getString("workingDirectory"));
+        this.preserveQuotes = Optional.ofNullable(table.getBoolean("preserveQuotes"));
+        this.startCommand = Optional.ofNullable(table.getString("start"));
+        this.stopCommand = Optional.ofNullable(table.getString("stop"));
+        this.remote = Optional.ofNullable(table.getBoolean("remote"));
+
+        Long longPort = table.getLong("port");
+        if (longPort == null) {
+            this.port = Optional.of(DEFAULT_REMOTE_PORT);
+        } else if (longPort < 0 || longPort > 65535) {
+            this.port = Optional.empty();
+        } else {
+            this.port = Optional.of(longPort.intValue());
+        }
+
+        this.security = table.getBoolean("security", true);
+        this.startUpDelay = table.getLong("startupDelay", DEFAULT_START_UP_DELAY);
+        // Configs written before the timeouts existed get the delay plus the old retry window
+        this.startupTimeout = table.getLong("startupTimeout", startUpDelay + DEFAULT_STARTUP_TIMEOUT_MARGIN);
+        this.shutdownDelay = table.getLong("shutdownDelay", DEFAULT_SHUTDOWN_DELAY);
+        this.stopTimeout = table.getLong("stopTimeout", shutdownDelay + DEFAULT_STOP_TIMEOUT_MARGIN);
+        this.forceStop = table.getBoolean("forceStop", false);
+        this.autoShutdownDelay = table.getLong("autoShutdownDelay", DEFAULT_AUTO_SHUTDOWN_DELAY);
+        this.maxQueueLength = table.getLong("maxQueueLength", DEFAULT_MAX_QUEUE_LENGTH);
+        this.queueOverflow = JoinQueue.Overflow.fromConfig(table.getString("queueOverflow"));
+        this.transferBatchSize = table.getLong("transferBatchSize", DEFAULT_TRANSFER_BATCH_SIZE);
+        this.transferInterval = table.getLong("transferInterval", DEFAULT_TRANSFER_INTERVAL);
+        this.transferRetries = table.getLong("transferRetries", DEFAULT_TRANSFER_RETRIES);
+        this.transferRetryDelay = table.getLong("transferRetryDelay", DEFAULT_TRANSFER_RETRY_DELAY);
+        this.communicationVersion = table.getLong("communicationVersion", DEFAULT_COMMUNICATION_VERSION).intValue();
+        this.useStdin = table.getBoolean("useStdin", false);
+        this.consoleLines = table.getLong("consoleLines", DEFAULT_CONSOLE_LINES);
+        this.idlePolicy = table.getString("idlePolicy", "stop").toLowerCase();
+        this.remoteServer = Optional.ofNullable(table.getString("remoteServer"));
+        this.prewarm = table.getBoolean("prewarm", false);
+    }
+
+    public Optional<String> getPath() {
+        return path;
+    }
+
+    public Optional<Boolean> getPreserveQuotes() {
+        return preserveQuotes;
+    }
+
+    public Optional<String> getStartCommand() {
+        return startCommand;
+    }
+
+    public Optional<String> getStopCommand() {
+        return stopCommand;
+    }
+
+    public Optional<Boolean> isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return The Boot Listener port, empty if the configured port is out of range.
+     */
+    public Optional<Integer> getPort() {
+        return port;
+    }
+
+    public boolean getSecurity() {
+        return security;
+    }
+
+    public long getStartUpDelay() {
+        return startUpDelay;
+    }
+
+    public long getStartupTimeout() {
+        return startupTimeout;
+    }
+
+    public long getShutdownDelay() {
+        return shutdownDelay;
+    }
+
+    public long getStopTimeout() {
+        return stopTimeout;
+    }
+
+    public boolean getForceStop() {
+        return forceStop;
+    }
+
+    public long getAutoShutdownDelay() {
+        return autoShutdownDelay;
+    }
+
+    public long getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    public JoinQueue.Overflow getQueueOverflow() {
+        return queueOverflow;
+    }
+
+    public long getTransferBatchSize() {
+        return transferBatchSize;
+    }
+
+    public long getTransferInterval() {
+        return transferInterval;
+    }
+
+    public long getTransferRetries() {
+        return transferRetries;
+    }
+
+    public long getTransferRetryDelay() {
+        return transferRetryDelay;
+    }
+
+    public int getCommunicationVersion() {
+        return communicationVersion;
+    }
+
+    public boolean getUseStdin() {
+        return useStdin;
+    }
+
+    public long getConsoleLines() {
+        return consoleLines;
+    }
+
+    public String getIdlePolicy() {
+        return idlePolicy;
+    }
+
+    public Optional<String> getRemoteServer() {
+        return remoteServer;
+    }
+
+    public boolean getPrewarm() {
+        return prewarm;
+    }
+
+    /**
+     * @return true if both profiles reach the Boot Listener the same way, a session opened for one can
+     *         be used for the other.
+     */
+    public boolean sameConnection(ServerProfile other) {
+        return remote.equals(other.remote)
+                && port.equals(other.port)
+                && communicationVersion == other.communicationVersion
+                && security == other.security
+                && remoteServer.equals(other.remoteServer);
+    }
+
+    /**
+     * Profiles are equal when they were read from the same settings, used to tell which servers a
+     * reload changed.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ServerProfile profile && settings.equals(profile.settings);
+    }
+
+    @Override
+    public int hashCode() {
+        return settings.hashCode();
+    }
+}
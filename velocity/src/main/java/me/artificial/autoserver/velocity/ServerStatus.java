@@ -3,8 +3,25 @@ package me.artificial.autoserver.velocity;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextColor;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Lifecycle state of a single server.
+ * <p>
+ * All changes go through compare-and-set transitions so that concurrent joins, ping callbacks,
+ * and scheduled tasks can never move a server through an invalid path or start it twice.
+ * <pre>
+ * STOPPED/UNKNOWN/RUNNING -> STARTING -> RUNNING | UNKNOWN
+ * STOPPED/UNKNOWN/RUNNING -> STOPPING -> STOPPED | UNKNOWN
+ * RUNNING -> HIBERNATED -> STARTING -> RUNNING | UNKNOWN
+ * </pre>
+ * Ping results may only move a server between STOPPED, RUNNING, and UNKNOWN; a server that is
+ * STARTING, STOPPING, or HIBERNATED is owned by the operation that put it there.
+ */
 public class ServerStatus {
 
     public enum Status {
@@ -12,38 +29,121 @@ public class ServerStatus {
         STOPPED,
         STARTING,
         STOPPING,
+        HIBERNATED,
         UNKNOWN
     }
-    private Status status;
-    private Instant timestamp;
 
-    public ServerStatus() {
-        setStatus(Status.UNKNOWN);
-    }
+    private static final Set<Status> IDLE = EnumSet.of(Status.RUNNING, Status.STOPPED, Status.UNKNOWN);
+
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.UNKNOWN);
+    private volatile Instant timestamp = Instant.now();
+    private volatile Instant lastChecked = null;
 
     public String getDisplayName() {
-        return switch (status) {
+        return switch (status.get()) {
             case RUNNING -> "Online";
             case STOPPED -> "Offline";
             case STARTING -> "Starting";
             case STOPPING -> "Stopping";
+            case HIBERNATED -> "Hibernating";
             case UNKNOWN -> "Unknown";
         };
     }
 
     public TextColor getColor() {
-        return switch (status) {
+        return switch (status.get()) {
             case RUNNING -> NamedTextColor.GREEN;
             case STOPPED -> NamedTextColor.GRAY;
             case STARTING -> NamedTextColor.YELLOW;
             case STOPPING -> NamedTextColor.BLUE;
+            case HIBERNATED -> NamedTextColor.AQUA;
             case UNKNOWN -> NamedTextColor.RED;
         };
     }
 
-    public void setStatus(Status status) {
-        this.timestamp = Instant.now();
-        this.status = status;
+    public Status get() {
+        return status.get();
+    }
+
+    /**
+     * Claims the server for a start operation.
+     *
+     * @return true if this caller now owns the start, false if another start or stop is in progress.
+     */
+    public boolean beginStart() {
+        return transition(IDLE, Status.STARTING);
+    }
+
+    /**
+     * Releases a start operation.
+     *
+     * @param success whether the server came up and is responsive.
+     */
+    public void finishStart(boolean success) {
+        transition(EnumSet.of(Status.STARTING), success ? Status.RUNNING : Status.UNKNOWN);
+    }
+
+    /**
+     * Claims the server for a stop operation.
+     *
+     * @return true if this caller now owns the stop, false if another start or stop is in progress.
+     */
+    public boolean beginStop() {
+        return transition(IDLE, Status.STOPPING);
+    }
+
+    /**
+     * Releases a stop operation.
+     *
+     * @param success whether the server is confirmed offline.
+     */
+    public void finishStop(boolean success) {
+        transition(EnumSet.of(Status.STOPPING), success ? Status.STOPPED : Status.UNKNOWN);
+    }
+
+    /**
+     * Marks a running server as frozen, nothing else may start or stop it until it is thawed.
+     *
+     * @return true if the server was running and this caller now owns it.
+     */
+    public boolean beginHibernate() {
+        return transition(EnumSet.of(Status.RUNNING), Status.HIBERNATED);
+    }
+
+    /**
+     * Claims a frozen server for thawing, it is STARTING until {@link #finishStart(boolean)} is called.
+     *
+     * @return true if the server was frozen and this caller now owns the thaw.
+     */
+    public boolean beginThaw() {
+        return transition(EnumSet.of(Status.HIBERNATED), Status.STARTING);
+    }
+
+    /**
+     * Records the result of a ping and marks the cached state as fresh.
+     * The state is only changed when no start or stop owns the server.
+     *
+     * @param online whether the ping succeeded.
+     */
+    public void recordCheck(boolean online) {
+        lastChecked = Instant.now();
+        transition(IDLE, online ? Status.RUNNING : Status.STOPPED);
+    }
+
+    /**
+     * @param ttl How long a ping result stays valid.
+     * @return true if the server was checked within the ttl.
+     */
+    public boolean isFresh(Duration ttl) {
+        Instant checked = lastChecked;
+        return checked != null && checked.plus(ttl).isAfter(Instant.now());
+    }
+
+    /**
+     * @return When the server was last pinged, or null if it never has been.
+     */
+    public Instant getLastChecked() {
+        return lastChecked;
     }
 
     public Instant getTimestamp() {
@@ -51,19 +151,37 @@ public class ServerStatus {
     }
 
     public boolean isStopping() {
-        return status.equals(Status.STOPPING);
+        return is(Status.STOPPING);
+    }
+
+    public boolean isHibernated() {
+        return is(Status.HIBERNATED);
     }
 
     public boolean isStarting() {
-        return status.equals(Status.STARTING);
+        return is(Status.STARTING);
     }
 
     public boolean is(Status status) {
-        return this.status.equals(status);
+        return this.status.get() == status;
+    }
+
+    private boolean transition(Set<Status> from, Status to) {
+        Status current;
+        do {
+            current = status.get();
+            if (!from.contains(current)) {
+                return false;
+            }
+        } while (!status.compareAndSet(current, to));
+        if (current != to) {
+            timestamp = Instant.now();
+        }
+        return true;
     }
 
     @Override
     public String toString() {
         return getDisplayName() + " (Set at: " + timestamp + ")";
     }
-}
\ No newline at end of file
+}
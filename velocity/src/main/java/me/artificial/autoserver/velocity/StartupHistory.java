@@ -0,0 +1,237 @@
+package me.artificial.autoserver.velocity;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers how long each server took to start, phase by phase.
+ * <p>
+ * Every phase is measured from the moment the start command was issued. The last {@link #SAMPLES}
+ * measurements of each phase are kept per server and saved to disk, so a percentile can be given
+ * for how long the next start will take.
+ */
+public class StartupHistory {
+    public static final int SAMPLES = 32;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    public enum Phase {
+        /** Game port accepted a connection */
+        PORT_OPEN,
+        /** Server answered a status ping */
+        READY,
+        /** First player connected */
+        FIRST_PLAYER
+    }
+
+    private final Path file;
+    private final Map<String, Map<Phase, Samples>> history = new ConcurrentHashMap<>();
+    private final Map<String, Run> running = new ConcurrentHashMap<>();
+
+    public StartupHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts timing a server, called when the start command is issued.
+     *
+     * @param serverName The server being started.
+     */
+    public void begin(String serverName) {
+        running.put(serverName, new Run(System.nanoTime()));
+    }
+
+    /**
+     * Records that a phase was reached by the start in progress. Only the first time counts.
+     *
+     * @param serverName The server being started.
+     * @param phase The phase that was reached.
+     * @return true if the phase was recorded.
+     */
+    public boolean record(String serverName, Phase phase) {
+        return record(serverName, phase, null);
+    }
+
+    /**
+     * Records that a phase was reached by the start in progress, unless it took longer than a limit.
+     * A server started ahead of time may sit empty for hours before the first player shows up, such a
+     * run says nothing about how long a start takes and is dropped.
+     *
+     * @param serverName The server being started.
+     * @param phase The phase that was reached.
+     * @param limit Longest time from the start command that is still recorded, null for no limit.
+     * @return true if the phase was recorded.
+     */
+    public boolean record(String serverName, Phase phase, Duration limit) {
+        Run run = running.get(serverName);
+        if (run == null || !run.reached(phase)) {
+            return false;
+        }
+        long millis = (System.nanoTime() - run.started) / 1_000_000;
+        if (limit != null && millis > limit.toMillis()) {
+            if (phase == Phase.FIRST_PLAYER) {
+                running.remove(serverName, run);
+            }
+            return false;
+        }
+        samples(serverName, phase).add(millis);
+        if (phase == Phase.FIRST_PLAYER) {
+            running.remove(serverName, run);
+        }
+        return true;
+    }
+
+    /**
+     * Stops timing a server whose start failed, nothing more is recorded for it.
+     *
+     * @param serverName The server that failed to start.
+     */
+    public void abort(String serverName) {
+        running.remove(serverName);
+    }
+
+    /**
+     * @param serverName The server to look up.
+     * @param phase The phase to look up.
+     * @param percentile Percentile between 0 and 100.
+     * @return Time from the start command to the phase, or empty if the server was never timed.
+     */
+    public Optional<Duration> percentile(String serverName, Phase phase, int percentile) {
+        Map<Phase, Samples> phases = history.get(serverName);
+        if (phases == null || !phases.containsKey(phase)) {
+            return Optional.empty();
+        }
+        return phases.get(phase).percentile(percentile).map(Duration::ofMillis);
+    }
+
+    /**
+     * @param serverName The server to look up.
+     * @return Time already spent on the start in progress, zero if the server is not starting.
+     */
+    public Duration elapsed(String serverName) {
+        Run run = running.get(serverName);
+        if (run == null) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(System.nanoTime() - run.started);
+    }
+
+    /**
+     * Loads the history from disk, a missing file leaves the history empty.
+     */
+    public void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            Stored stored = GSON.fromJson(reader, Stored.class);
+            if (stored == null || stored.servers == null) {
+                return;
+            }
+            stored.servers.forEach((serverName, phases) -> phases.forEach((phase, values) -> {
+                Samples samples = samples(serverName, phase);
+                for (long value : values) {
+                    samples.add(value);
+                }
+            }));
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed startup history: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the history to disk, replacing the previous file in one step.
+     */
+    public void save() throws IOException {
+        Stored stored = new Stored();
+        stored.servers = new HashMap<>();
+        history.forEach((serverName, phases) -> {
+            Map<Phase, long[]> values = new EnumMap<>(Phase.class);
+            phases.forEach((phase, samples) -> values.put(phase, samples.values()));
+            stored.servers.put(serverName, values);
+        });
+
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            GSON.toJson(stored, writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Samples samples(String serverName, Phase phase) {
+        return history.computeIfAbsent(serverName, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, p -> new Samples());
+    }
+
+    /**
+     * Ring buffer of the most recent durations in milliseconds.
+     */
+    private static class Samples {
+        private final long[] values = new long[SAMPLES];
+        private int next = 0;
+        private int size = 0;
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        /**
+         * @return The samples oldest first.
+         */
+        synchronized long[] values() {
+            long[] copy = new long[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = values[(next - size + i + values.length) % values.length];
+            }
+            return copy;
+        }
+
+        Optional<Long> percentile(int percentile) {
+            long[] sorted = values();
+            if (sorted.length == 0) {
+                return Optional.empty();
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return Optional.of(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+        }
+    }
+
+    private static class Run {
+        private final long started;
+        private final boolean[] reached = new boolean[Phase.values().length];
+
+        private Run(long started) {
+            this.started = started;
+        }
+
+        synchronized boolean reached(Phase phase) {
+            if (reached[phase.ordinal()]) {
+                return false;
+            }
+            reached[phase.ordinal()] = true;
+            return true;
+        }
+    }
+
+    private static class Stored {
+        private Map<String, Map<Phase, long[]>> servers;
+    }
+}
@@ -0,0 +1,138 @@
+package me.artificial.autoserver.velocity;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import me.artificial.autoserver.common.StatusProber;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a server to finish stopping without holding a thread while it waits.
+ * <p>
+ * A server process started by AutoServer is done when the process exits. For any other server the
+ * game port is checked with backoff until connections are refused. If the server is still up at the
+ * deadline its process can be sent SIGTERM and, if that is ignored, SIGKILL.
+ */
+public class StopWatcher {
+    private static final long INITIAL_DELAY_MS = 250;
+    private static final long MAX_DELAY_MS = 2000;
+    private static final double JITTER = 0.2;
+    private static final long CONNECT_TIMEOUT_MS = 1000;
+    private static final long TERMINATE_GRACE_SECONDS = 10;
+    private static final long KILL_GRACE_SECONDS = 5;
+
+    private final AutoServerLogger logger;
+    private final StatusProber statusProber;
+    private final ScheduledExecutorService scheduler;
+
+    public StopWatcher(AutoServerLogger logger, StatusProber statusProber, ScheduledExecutorService scheduler) {
+        this.logger = logger;
+        this.statusProber = statusProber;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Waits until the server has stopped or the deadline passes.
+     *
+     * @param server The server being stopped.
+     * @param timeout Maximum time to wait before giving up or escalating.
+     * @param process The server process if AutoServer started it.
+     * @param force Whether to terminate, then kill, the process once the deadline passes.
+     * @return A CompletableFuture that completes with true once the server is down, false if it is still up.
+     */
+    public CompletableFuture<Boolean> awaitStopped(RegisteredServer server, Duration timeout, Optional<ProcessHandle> process, boolean force) {
+        String serverName = server.getServerInfo().getName();
+        CompletableFuture<Boolean> stopped = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        logger.info("Waiting up to {} seconds for server {} to stop.", timeout.toSeconds(), serverName);
+
+        process.ifPresent(handle -> handle.onExit().thenRun(() -> {
+            if (stopped.complete(true)) {
+                logger.info("Server {} process exited.", serverName);
+            }
+        }));
+        // the port is watched as well, the process may only be a wrapper around the server
+        schedule(server, stopped, deadline, 0, INITIAL_DELAY_MS);
+
+        return stopped.thenCompose(down -> {
+            if (down || !force || process.isEmpty() || !process.get().isAlive()) {
+                return CompletableFuture.completedFuture(down);
+            }
+            return escalate(serverName, process.get());
+        });
+    }
+
+    private void schedule(RegisteredServer server, CompletableFuture<Boolean> stopped, long deadline, int attempt, long delayMs) {
+        if (stopped.isDone()) {
+            return;
+        }
+        if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) > deadline) {
+            scheduler.schedule(() -> {
+                if (stopped.complete(false)) {
+                    logger.warn("Server {} did not stop in time.", server.getServerInfo().getName());
+                }
+            }, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return;
+        }
+        scheduler.schedule(() -> probe(server, stopped, deadline, attempt), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(RegisteredServer server, CompletableFuture<Boolean> stopped, long deadline, int attempt) {
+        if (stopped.isDone()) {
+            return;
+        }
+        statusProber.probe(server.getServerInfo().getAddress(), Duration.ofMillis(CONNECT_TIMEOUT_MS), false)
+                .thenAccept(result -> {
+                    if (result.getState() == StatusProber.State.OFFLINE) {
+                        if (stopped.complete(true)) {
+                            logger.info("Server {} stopped accepting connections.", server.getServerInfo().getName());
+                        }
+                        return;
+                    }
+                    schedule(server, stopped, deadline, attempt + 1, nextDelay(attempt + 1));
+                });
+    }
+
+    private CompletableFuture<Boolean> escalate(String serverName, ProcessHandle process) {
+        logger.warn("Sending SIGTERM to server {} (pid {}).", serverName, process.pid());
+        // the server itself first, then whatever launched it
+        List<ProcessHandle> tree = process.descendants().toList();
+        for (int i = tree.size() - 1; i >= 0; i--) {
+            tree.get(i).destroy();
+        }
+        process.destroy();
+
+        return process.onExit()
+                .thenApply(exited -> true)
+                .completeOnTimeout(false, TERMINATE_GRACE_SECONDS, TimeUnit.SECONDS)
+                .thenCompose(exited -> {
+                    if (exited) {
+                        return CompletableFuture.completedFuture(true);
+                    }
+                    logger.error("Server {} ignored SIGTERM, sending SIGKILL.", serverName);
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly();
+                    // a process stuck in the kernel can outlive SIGKILL for a while
+                    return process.onExit()
+                            .thenApply(killed -> true)
+                            .completeOnTimeout(false, KILL_GRACE_SECONDS, TimeUnit.SECONDS)
+                            .thenApply(killed -> {
+                                if (!killed) {
+                                    logger.error("Server {} (pid {}) is still running after SIGKILL.", serverName, process.pid());
+                                }
+                                return killed;
+                            });
+                });
+    }
+
+    private static long nextDelay(int attempt) {
+        long base = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(attempt, 10));
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return (long) (base * jitter);
+    }
+}
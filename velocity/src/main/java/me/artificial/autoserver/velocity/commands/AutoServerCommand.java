@@ -21,6 +21,8 @@ public class AutoServerCommand implements SimpleCommand {
         subCommands.put("info", new InfoCommand(plugin));
         subCommands.put("start", new StartCommand(plugin));
         subCommands.put("stop", new StopCommand(plugin));
+        subCommands.put("console", new ConsoleCommand(plugin));
+        subCommands.put("send", new SendCommand(plugin));
         subCommands.put("version", new VersionCommand(plugin));
     }
 
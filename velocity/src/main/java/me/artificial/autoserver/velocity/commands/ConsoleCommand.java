@@ -0,0 +1,79 @@
+package me.artificial.autoserver.velocity.commands;
+
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import me.artificial.autoserver.velocity.AutoServer;
+import me.artificial.autoserver.velocity.startable.ProcessSupervisor;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+import java.util.List;
+import java.util.Optional;
+
+public class ConsoleCommand implements SubCommand {
+    private static final int DEFAULT_LINES = 20;
+    private final AutoServer plugin;
+
+    public ConsoleCommand(AutoServer plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(CommandSource source, String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            source.sendMessage(Component.text().content("Usage /autoserver console <serverName> [lines]"));
+            return;
+        }
+
+        Optional<RegisteredServer> optionalServer = plugin.getProxy().getServer(args[1]);
+        if (optionalServer.isEmpty()) {
+            source.sendMessage(Component.text().content("Unknown server name. Double check spelling."));
+            return;
+        }
+
+        int count = DEFAULT_LINES;
+        if (args.length == 3) {
+            try {
+                count = Math.max(1, Integer.parseInt(args[2]));
+            } catch (NumberFormatException e) {
+                source.sendMessage(Component.text().content("Lines must be a number."));
+                return;
+            }
+        }
+
+        Optional<ProcessSupervisor> supervisor = plugin.getServerManager().getSupervisor(optionalServer.get());
+        if (supervisor.isEmpty()) {
+            source.sendMessage(Component.text().content("No console captured for " + args[1] + ". Only local servers started by AutoServer are captured."));
+            return;
+        }
+
+        List<String> lines = supervisor.get().tail(count);
+        source.sendMessage(Component.text().content("Last " + lines.size() + " lines of " + args[1] + ":").color(NamedTextColor.AQUA));
+        for (String line : lines) {
+            source.sendMessage(Component.text(line).color(NamedTextColor.GRAY));
+        }
+    }
+
+    @Override
+    public boolean hasPermission(SimpleCommand.Invocation invocation) {
+        return invocation.source().hasPermission("autoserver.command.console");
+    }
+
+    @Override
+    public List<String> suggest(SimpleCommand.Invocation invocation) {
+        String[] args = invocation.arguments();
+        if (args.length == 2) {
+            String part = args[1].toLowerCase();
+            return plugin.getProxy().getAllServers().stream()
+                    .map(s -> s.getServerInfo().getName())
+                    .filter(name -> name.toLowerCase().startsWith(part)).toList();
+        }
+        return List.of();
+    }
+
+    @Override
+    public String help() {
+        return "Show the latest console output of a local server";
+    }
+}
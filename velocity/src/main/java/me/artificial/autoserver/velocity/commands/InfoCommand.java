@@ -3,11 +3,18 @@ package me.artificial.autoserver.velocity.commands;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
+import me.artificial.autoserver.common.NetworkCommands;
 import me.artificial.autoserver.velocity.AutoServer;
+import me.artificial.autoserver.velocity.PingCoalescer;
+import me.artificial.autoserver.velocity.ServerManager;
 import me.artificial.autoserver.velocity.ServerStatus;
+import me.artificial.autoserver.velocity.StartupHistory;
+import me.artificial.autoserver.velocity.startable.ControlSession;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,20 +38,33 @@ public class InfoCommand implements SubCommand {
             return;
         }
         RegisteredServer server = optionalServer.get();
-        ServerStatus serverStatus = plugin.getServerManager().getServerStatus(server);
-        String message = buildMessage(server, serverStatus);
+        ServerManager serverManager = plugin.getServerManager();
+        ServerStatus serverStatus = serverManager.getServerStatus(server);
+        Optional<ControlSession> session = serverManager.getControlSession(server);
 
-        source.sendMessage(MiniMessage.miniMessage().deserialize(message));
+        if (session.isPresent() && session.get().isConnected()) {
+            // ask the listener as well, the query gives up after a couple of seconds
+            serverManager.queryListenerStatus(server).thenAccept(listenerStatus ->
+                    source.sendMessage(MiniMessage.miniMessage().deserialize(buildMessage(server, serverStatus, controlSession(session, listenerStatus)))));
+            return;
+        }
+        source.sendMessage(MiniMessage.miniMessage().deserialize(buildMessage(server, serverStatus, controlSession(session, null))));
     }
 
-    private String buildMessage(RegisteredServer server, ServerStatus serverStatus) {
+    private String buildMessage(RegisteredServer server, ServerStatus serverStatus, String controlSession) {
         String statusColor = serverStatus.getColor().toString();
         String status = serverStatus.getDisplayName();
+        PingCoalescer.Stats pingStats = plugin.getServerManager().getPingStats(server);
 
         String message = """
                 <bold>Server Info: <aqua>%s</aqua></bold>
                 <gray>--------------------------------------</gray>
                 Status: <%s>%s</%s>
+                Last checked: <gray>%s</gray>
+                Pings: <gray>%d sent, %d shared</gray>
+                Demand this hour: <gray>%d%%</gray>
+                Startup time: <gray>%s</gray>
+                Control session: <gray>%s</gray>
                 IP: <gold>%s</gold>
                 Port: <gold>%d</gold>
                 <gray>--------------------------------------</gray>
@@ -52,11 +72,46 @@ public class InfoCommand implements SubCommand {
         message = String.format(message,
                 server.getServerInfo().getName(),
                 statusColor, status, statusColor,
+                lastChecked(serverStatus),
+                pingStats.issued(), pingStats.coalesced(),
+                Math.round(plugin.getServerManager().getPrewarmer().currentDemand(server) * 100),
+                startupTime(server),
+                controlSession,
                 server.getServerInfo().getAddress().getAddress(),
                 server.getServerInfo().getAddress().getPort());
         return message;
     }
 
+    private String startupTime(RegisteredServer server) {
+        StartupHistory history = plugin.getServerManager().getStartupHistory();
+        String serverName = server.getServerInfo().getName();
+        Optional<Duration> median = history.percentile(serverName, StartupHistory.Phase.READY, 50);
+        Optional<Duration> slow = history.percentile(serverName, StartupHistory.Phase.READY, 90);
+        if (median.isEmpty() || slow.isEmpty()) {
+            return "not measured yet";
+        }
+        return median.get().toSeconds() + "s typical, " + slow.get().toSeconds() + "s slow";
+    }
+
+    private String controlSession(Optional<ControlSession> session, String listenerStatus) {
+        if (session.isEmpty()) {
+            return "not used";
+        }
+        String state = session.get().getState().getDisplayName();
+        if (listenerStatus == null || NetworkCommands.UNKNOWN.equals(listenerStatus)) {
+            return state;
+        }
+        return state + ", listener reports " + listenerStatus.toLowerCase();
+    }
+
+    private String lastChecked(ServerStatus serverStatus) {
+        Instant checked = serverStatus.getLastChecked();
+        if (checked == null) {
+            return "never";
+        }
+        return Duration.between(checked, Instant.now()).toSeconds() + " seconds ago";
+    }
+
     @Override
     public boolean hasPermission(SimpleCommand.Invocation invocation) {
         return invocation.source().hasPermission("autoserver.command.info");
@@ -24,7 +24,7 @@ public class ReloadCommand implements SubCommand {
 
         plugin.getLogger().info("Reloading configuration...");
         try {
-            plugin.getConfig().reloadConfig();
+            plugin.reloadConfig();
             plugin.getLogger().info("Configuration reloaded.");
             source.sendMessage(Component.text("Configuration reloaded."));
         } catch (Exception e) {
@@ -0,0 +1,66 @@
+package me.artificial.autoserver.velocity.commands;
+
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import me.artificial.autoserver.velocity.AutoServer;
+import me.artificial.autoserver.velocity.startable.ProcessSupervisor;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+public class SendCommand implements SubCommand {
+    private final AutoServer plugin;
+
+    public SendCommand(AutoServer plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(CommandSource source, String[] args) {
+        if (args.length < 3) {
+            source.sendMessage(Component.text().content("Usage /autoserver send <serverName> <command>"));
+            return;
+        }
+
+        Optional<RegisteredServer> optionalServer = plugin.getProxy().getServer(args[1]);
+        if (optionalServer.isEmpty()) {
+            source.sendMessage(Component.text().content("Unknown server name. Double check spelling."));
+            return;
+        }
+
+        Optional<ProcessSupervisor> supervisor = plugin.getServerManager().getSupervisor(optionalServer.get());
+        String command = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
+        if (supervisor.isEmpty() || !supervisor.get().sendCommand(command)) {
+            source.sendMessage(Component.text().content("Could not write to the console of " + args[1] + ". Only running local servers started by AutoServer accept commands.").color(NamedTextColor.RED));
+            return;
+        }
+        plugin.getLogger().info("Sent console command to {}: {}", args[1], command);
+        source.sendMessage(Component.text().content("Sent \"" + command + "\" to " + args[1] + "."));
+    }
+
+    @Override
+    public boolean hasPermission(SimpleCommand.Invocation invocation) {
+        return invocation.source().hasPermission("autoserver.command.send");
+    }
+
+    @Override
+    public List<String> suggest(SimpleCommand.Invocation invocation) {
+        String[] args = invocation.arguments();
+        if (args.length == 2) {
+            String part = args[1].toLowerCase();
+            return plugin.getProxy().getAllServers().stream()
+                    .map(s -> s.getServerInfo().getName())
+                    .filter(name -> name.toLowerCase().startsWith(part)).toList();
+        }
+        return List.of();
+    }
+
+    @Override
+    public String help() {
+        return "Send a command to the console of a local server";
+    }
+}
@@ -0,0 +1,403 @@
+package me.artificial.autoserver.velocity.startable;
+
+import me.artificial.autoserver.common.ControlProtocol;
+import me.artificial.autoserver.common.NetworkCommands;
+import me.artificial.autoserver.velocity.AutoServerLogger;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A long-lived connection to the Boot Listener of a remote host.
+ * <p>
+ * Every request gets an id that the listener echoes back, so several commands can be in flight on the
+ * one connection. A heartbeat is sent every few seconds and the session is dropped once the listener
+ * stops answering, failing every pending request straight away instead of leaving it to hang. Dropped
+ * sessions reconnect on their own with backoff. Listeners that predate sessions answer with an error,
+ * those hosts are marked unsupported and commands fall back to one connection per command.
+ * <p>
+ * Frames are written by a thread of the session, a host that stops reading only stalls its own
+ * session and never the caller, which is often the shared scheduler.
+ * <p>
+ * With communication version 3 the session speaks the binary {@link ControlProtocol}, request id and
+ * server name travel as fields of the frame instead of text around the command.
+ */
+public class ControlSession {
+    private static final int CONNECT_TIMEOUT = 3000;
+    private static final long HEARTBEAT_INTERVAL_MS = 2000;
+    private static final int DEAD_AFTER_MS = 6000;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final double JITTER = 0.2;
+    private static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    public enum State {
+        CONNECTING("connecting"),
+        CONNECTED("connected"),
+        DISCONNECTED("disconnected"),
+        UNSUPPORTED("not supported by listener"),
+        CLOSED("closed");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final AutoServerLogger logger;
+    private final InetSocketAddress address;
+    private final boolean binary;
+    private final boolean securityEnabled;
+    private final Supplier<String> secretSupplier;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService writer;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile State state = State.DISCONNECTED;
+    private volatile Socket socket;
+    private volatile OutputStream output;
+    private volatile String secret;
+    private ControlProtocol.Codec encoder;
+    private ControlProtocol.Codec decoder;
+    private final ControlProtocol.Frame frame = new ControlProtocol.Frame();
+    private volatile boolean closed = false;
+    private boolean reportedUnsupported = false;
+    private Thread connection;
+    private ScheduledFuture<?> heartbeat;
+
+    private record Pending(String command, Predicate<String> isFinal, CompletableFuture<String> reply) {}
+
+    /**
+     * @param communicationVersion 2 for text commands, 3 for the binary {@link ControlProtocol}.
+     */
+    public ControlSession(AutoServerLogger logger, InetSocketAddress address, int communicationVersion, boolean securityEnabled,
+                          Supplier<String> secretSupplier, ScheduledExecutorService scheduler) {
+        this.logger = logger;
+        this.address = address;
+        this.binary = communicationVersion >= ControlProtocol.VERSION;
+        this.securityEnabled = securityEnabled;
+        this.secretSupplier = secretSupplier;
+        this.scheduler = scheduler;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AutoServer-Control-Writer-" + address.getHostString() + ":" + address.getPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts connecting in the background. Calling it again does nothing.
+     */
+    public synchronized void open() {
+        if (connection != null) {
+            return;
+        }
+        connection = new Thread(this::connectionLoop, "AutoServer-Control-" + address.getHostString() + ":" + address.getPort());
+        connection.setDaemon(true);
+        connection.start();
+        heartbeat = scheduler.scheduleWithFixedDelay(this::sendHeartbeat, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the session for good and fails all pending requests.
+     */
+    public synchronized void close() {
+        closed = true;
+        state = State.CLOSED;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        if (connection != null) {
+            connection.interrupt();
+        }
+        closeSocket();
+        writer.shutdownNow();
+        failPending("Control session closed.");
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Sends a command over the session.
+     *
+     * @param command The command to send, without a request id.
+     * @param serverName Name of the server on a Boot Listener that manages several, or null for its only server.
+     * @param timeout Maximum time to wait for the final answer.
+     * @param isFinal Sees every answer to the request, returns true for the one that ends it. May throw to fail the request.
+     * @return A CompletableFuture that completes with the final answer, or exceptionally if the session is
+     *         not connected, drops, or the timeout passes first.
+     */
+    public CompletableFuture<String> request(String command, String serverName, Duration timeout, Predicate<String> isFinal) {
+        if (state != State.CONNECTED) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No control session to " + describe() + "."));
+        }
+        int requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        pending.put(requestId, new Pending(command, isFinal, reply));
+        reply.whenComplete((result, ex) -> pending.remove(requestId));
+
+        try {
+            writer.execute(() -> {
+                // failed with the connection it was meant for, never send it on the next one
+                if (reply.isDone()) {
+                    return;
+                }
+                try {
+                    write(requestId, command, serverName);
+                } catch (IOException e) {
+                    reply.completeExceptionally(e);
+                    closeSocket();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reply.completeExceptionally(new IllegalStateException("Control session closed."));
+            return reply;
+        }
+        return reply.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void connectionLoop() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while (!closed) {
+            state = State.CONNECTING;
+            try {
+                if (connect()) {
+                    backoff = INITIAL_BACKOFF_MS;
+                    readLoop();
+                }
+            } catch (IOException e) {
+                logger.debug("Control session to {} failed: {}", describe(), e.getMessage());
+            }
+
+            boolean wasConnected = state == State.CONNECTED;
+            closeSocket();
+            if (closed) {
+                state = State.CLOSED;
+                break;
+            }
+            if (wasConnected) {
+                logger.info("Control session to {} lost, reconnecting.", describe());
+            }
+            if (state != State.UNSUPPORTED) {
+                state = State.DISCONNECTED;
+            }
+            failPending("Control session to " + describe() + " lost.");
+
+            // listeners that do not know sessions will not learn them until they are updated, no rush
+            long delay = state == State.UNSUPPORTED ? MAX_BACKOFF_MS : backoff;
+            backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+            try {
+                Thread.sleep((long) (delay * (1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER))));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Connects and asks the listener to keep the connection open.
+     *
+     * @return true if the listener accepted the session.
+     */
+    private boolean connect() throws IOException {
+        secret = securityEnabled ? secretSupplier.get() : null;
+        if (securityEnabled && secret == null) {
+            throw new IOException("Security enabled but no secret is present.");
+        }
+
+        Socket newSocket = new Socket();
+        socket = newSocket;
+        newSocket.connect(address, CONNECT_TIMEOUT);
+        newSocket.setSoTimeout(DEAD_AFTER_MS);
+        newSocket.setTcpNoDelay(true);
+        output = newSocket.getOutputStream();
+        if (binary) {
+            synchronized (writeLock) {
+                encoder = new ControlProtocol.Codec(secret);
+            }
+            decoder = new ControlProtocol.Codec(secret);
+        }
+
+        String answer;
+        try {
+            writeHandshake();
+            answer = binary ? readFrame(newSocket.getInputStream()).getCommand() : readMessage(new DataInputStream(newSocket.getInputStream()));
+        } catch (EOFException e) {
+            throw binary ? new IOException("Connection closed during the handshake, the Boot Listener may not support communicationVersion 3.") : e;
+        }
+        if (NetworkCommands.SESSION_ACCEPTED.equals(answer)) {
+            state = State.CONNECTED;
+            logger.info("Control session to {} established.", describe());
+            return true;
+        }
+        if (NetworkCommands.ERROR.equals(answer)) {
+            if (!reportedUnsupported) {
+                reportedUnsupported = true;
+                logger.info("Boot Listener at {} does not support control sessions, using one connection per command.", describe());
+            }
+            state = State.UNSUPPORTED;
+            return false;
+        }
+        throw new IOException("Unexpected answer to session request: " + answer);
+    }
+
+    private void readLoop() throws IOException {
+        InputStream stream = socket.getInputStream();
+        DataInputStream input = new DataInputStream(stream);
+        while (state == State.CONNECTED) {
+            // the heartbeat keeps answers coming, a read timeout means the host is gone
+            int requestId;
+            String answer;
+            if (binary) {
+                ControlProtocol.Frame received = readFrame(stream);
+                requestId = received.getRequestId();
+                answer = received.getCommand();
+                if (answer == null) {
+                    logger.warn("Control session to {} sent unknown opcode {}", describe(), received.getOpcode());
+                    continue;
+                }
+            } else {
+                String message = readMessage(input);
+                NetworkCommands.SessionMessage parsed = NetworkCommands.parseSessionMessage(message);
+                if (parsed == null) {
+                    logger.warn("Control session to {} sent a message without a request id: {}", describe(), message);
+                    continue;
+                }
+                requestId = parsed.requestId();
+                answer = parsed.command();
+            }
+
+            Pending request = pending.get(requestId);
+            if (request == null) {
+                logger.trace("Answer {} to finished request {}", answer, requestId);
+                continue;
+            }
+            logger.trace("Control session {} answered {} with {}", describe(), request.command(), answer);
+            try {
+                if (request.isFinal().test(answer)) {
+                    request.reply().complete(answer);
+                }
+            } catch (RuntimeException e) {
+                request.reply().completeExceptionally(e);
+            }
+        }
+    }
+
+    private ControlProtocol.Frame readFrame(InputStream input) throws IOException {
+        decoder.readFrame(input, frame);
+        return frame;
+    }
+
+    private String readMessage(DataInputStream input) throws IOException {
+        int totalLength = input.readInt();
+        if (totalLength < 0 || totalLength > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + totalLength);
+        }
+        byte[] dataBytes = new byte[totalLength];
+        input.readFully(dataBytes);
+
+        NetworkCommands.DecodedMessage decodedMessage = NetworkCommands.decodeData(dataBytes, securityEnabled);
+        if (decodedMessage.isMalformed()) {
+            throw new IOException("Received a malformed message.");
+        }
+        if (securityEnabled && !decodedMessage.verify(secret)) {
+            throw new IOException("Received a message with an invalid signature.");
+        }
+        return decodedMessage.getCommand();
+    }
+
+    private void writeHandshake() throws IOException {
+        synchronized (writeLock) {
+            if (binary) {
+                encoder.writeFrame(output, NetworkCommands.SESSION, 0, null);
+            } else {
+                output.write(NetworkCommands.encodeData(NetworkCommands.SESSION, securityEnabled, secret));
+                output.flush();
+            }
+        }
+    }
+
+    private void write(int requestId, String command, String serverName) throws IOException {
+        synchronized (writeLock) {
+            OutputStream out = output;
+            if (out == null) {
+                throw new IOException("Not connected.");
+            }
+            if (binary) {
+                encoder.writeFrame(out, command, requestId, serverName);
+            } else {
+                String message = NetworkCommands.withRequestId(requestId, NetworkCommands.withServer(command, serverName));
+                out.write(NetworkCommands.encodeData(message, securityEnabled, secret));
+                out.flush();
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        if (state != State.CONNECTED) {
+            return;
+        }
+        request(NetworkCommands.PING, null, Duration.ofMillis(DEAD_AFTER_MS), answer -> true)
+                .exceptionally(ex -> {
+                    logger.trace("Heartbeat to {} failed: {}", describe(), ex.getMessage());
+                    return null;
+                });
+    }
+
+    private void closeSocket() {
+        output = null;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.trace("Error closing control session to {}: {}", describe(), e.getMessage());
+            }
+        }
+    }
+
+    private void failPending(String reason) {
+        for (Pending request : pending.values()) {
+            request.reply().completeExceptionally(new IllegalStateException(reason));
+        }
+    }
+
+    private String describe() {
+        return address.getHostString() + ":" + address.getPort();
+    }
+}
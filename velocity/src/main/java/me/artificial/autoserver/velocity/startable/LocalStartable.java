@@ -5,12 +5,20 @@ import me.artificial.autoserver.common.CommandRunner;
 import me.artificial.autoserver.velocity.AnsiColors;
 import me.artificial.autoserver.velocity.AutoServer;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class LocalStartable implements Startable {
     private final AutoServer plugin;
     private final RegisteredServer server;
+    private static final long EARLY_EXIT_SECONDS = 1;
+    private volatile ProcessSupervisor supervisor;
 
     public LocalStartable(AutoServer plugin, RegisteredServer server) {
         this.plugin = plugin;
@@ -29,12 +37,41 @@ public class LocalStartable implements Startable {
             Optional<Boolean> preserveQuotes = plugin.getConfig().getPreserveQuotes(server);
 
             plugin.getLogger().info("Running start command for {} server. \"{}{}{}\"", server.getServerInfo().getName(), AnsiColors.YELLOW, command.get(), AnsiColors.RESET);
-            return runCommand(path.orElse(null), command.get(), preserveQuotes.orElse(null));
+            CommandRunner.CommandResult commandResult = CommandRunner.runCommand(path.orElse(null), command.get(), preserveQuotes.orElse(null));
+            if (commandResult.failedToStart()) {
+                throw new RuntimeException(commandResult.getErrorMessage());
+            }
+            plugin.getLogger().debug("Server {} started with pid {}", server.getServerInfo().getName(), commandResult.getPid());
+
+            // Read the output from the start so the server never blocks on a full pipe
+            ProcessSupervisor started = new ProcessSupervisor(plugin.getLogger(), server.getServerInfo().getName(),
+                    commandResult.getProcess(), (int) plugin.getConfig().getConsoleLines(server));
+            started.start(exitCode -> plugin.getServerManager().processExited(server, exitCode));
+            supervisor = started;
+
+            // This is only to catch immediate errors
+            if (waitForExit(commandResult.getProcess())) {
+                int exitCode = commandResult.getExitCode();
+                String out = String.join(System.lineSeparator(), started.tail(50));
+                if (!out.isBlank()) {
+                    plugin.getLogger().info("The command exited quickly, which may indicate an error. Here is the output: {}{}{}", AnsiColors.YELLOW, out, AnsiColors.RESET);
+                }
+                if (exitCode != 0) {
+                    plugin.getLogger().error("Process exited with a non-zero exit code: {}", exitCode);
+                    throw new RuntimeException("Command failed to run.");
+                }
+            } else {
+                started.arm();
+            }
+            return "Command ran successfully";
         });
     }
 
     @Override
     public CompletableFuture<String> stop() {
+        if (plugin.getConfig().getUseStdin(server)) {
+            return CompletableFuture.supplyAsync(this::stopThroughConsole);
+        }
         return CompletableFuture.supplyAsync(() -> {
             Optional<String> command = plugin.getConfig().getStopCommand(server);
             if (command.isEmpty()) {
@@ -44,25 +81,152 @@ public class LocalStartable implements Startable {
             Optional<String> path = plugin.getConfig().getPath(server);
             Optional<Boolean> preserveQuotes = plugin.getConfig().getPreserveQuotes(server);
 
+            ProcessSupervisor running = supervisor;
+            if (running != null) {
+                running.stopRequested();
+            }
             plugin.getLogger().info("Running stop command for {} server. \"{}{}{}\"", server.getServerInfo().getName(), AnsiColors.YELLOW, command.get(), AnsiColors.RESET);
-            return runCommand(path.orElse(null), command.get(), preserveQuotes.orElse(null));
+            runCommand(path.orElse(null), command.get(), preserveQuotes.orElse(null));
+            return "Command ran successfully";
         });
     }
 
-    private String runCommand(String path, String command, Boolean preserveQuotes) throws RuntimeException {
-        CommandRunner.CommandResult commandResult = CommandRunner.runCommand(path, command, preserveQuotes);
-        // Sleep for 1 second to give time for command to execute
-        // This is only to catch immediate errors
+    /**
+     * Writes the stop setting to the console of the server instead of running a separate stop command.
+     * Several console commands can be given separated by ';', e.g. "save-all; stop".
+     */
+    private String stopThroughConsole() {
+        ProcessSupervisor running = supervisor;
+        if (running == null || !running.getProcess().isAlive()) {
+            plugin.getLogger().error("Server {} was not started by AutoServer, can not write to its console", server.getServerInfo().getName());
+            throw new RuntimeException("Server process not found");
+        }
+
+        running.stopRequested();
+        String commands = plugin.getConfig().getStopCommand(server).orElse("stop");
+        plugin.getLogger().info("Writing stop commands to the console of {}. \"{}{}{}\"", server.getServerInfo().getName(), AnsiColors.YELLOW, commands, AnsiColors.RESET);
+        for (String command : commands.split(";")) {
+            if (command.isBlank()) {
+                continue;
+            }
+            if (!running.sendCommand(command.trim())) {
+                throw new RuntimeException("Failed to write to server console");
+            }
+        }
+        return "Stop command sent to console";
+    }
+
+    /**
+     * Called when a stop failed and the server is still running, so a later exit is reported as a crash.
+     */
+    public void stopFailed() {
+        ProcessSupervisor running = supervisor;
+        if (running != null && running.getProcess().isAlive()) {
+            running.stopAbandoned();
+        }
+    }
+
+    /**
+     * @return The process spawned by the last start command, if it is still running.
+     */
+    public Optional<ProcessHandle> getProcess() {
+        ProcessSupervisor started = supervisor;
+        if (started == null || !started.getProcess().isAlive()) {
+            return Optional.empty();
+        }
+        return Optional.of(started.getProcess().toHandle());
+    }
+
+    /**
+     * @return The supervisor of the last process started, kept after it exits so its output can still be read.
+     */
+    public Optional<ProcessSupervisor> getSupervisor() {
+        return Optional.ofNullable(supervisor);
+    }
+
+    /**
+     * @return true if the server process can be frozen, only Linux with a process started by this plugin.
+     */
+    public boolean canSuspend() {
+        return System.getProperty("os.name").toLowerCase().contains("linux") && getProcess().isPresent();
+    }
+
+    /**
+     * Freezes the server process and everything it spawned with SIGSTOP.
+     * The process keeps its memory so {@link #resume()} brings it back in milliseconds.
+     *
+     * @return A CompletableFuture that completes with true if every process was signalled.
+     */
+    public CompletableFuture<Boolean> suspend() {
+        // parent first so it does not react to its children stopping
+        return CompletableFuture.supplyAsync(() -> signal("-STOP", false));
+    }
+
+    /**
+     * Thaws a server frozen by {@link #suspend()} with SIGCONT.
+     *
+     * @return A CompletableFuture that completes with true if every process was signalled.
+     */
+    public CompletableFuture<Boolean> resume() {
+        // children first so they are running again when the parent wakes up
+        return CompletableFuture.supplyAsync(() -> signal("-CONT", true));
+    }
+
+    private boolean signal(String signal, boolean childrenFirst) {
+        Optional<ProcessHandle> root = getProcess();
+        if (root.isEmpty()) {
+            return false;
+        }
+        List<ProcessHandle> tree = new ArrayList<>(Stream.concat(Stream.of(root.get()), root.get().descendants()).toList());
+        if (childrenFirst) {
+            Collections.reverse(tree);
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add(signal);
+        for (ProcessHandle handle : tree) {
+            command.add(String.valueOf(handle.pid()));
+        }
+        plugin.getLogger().debug("Sending {} to {} processes of {}", signal, tree.size(), server.getServerInfo().getName());
         try {
-            Thread.sleep(1000);
+            Process kill = new ProcessBuilder(command).redirectErrorStream(true).start();
+            int exitCode = kill.waitFor();
+            if (exitCode != 0) {
+                plugin.getLogger().warn("kill {} exited with {}: {}", signal, exitCode, new String(kill.getInputStream().readAllBytes()).trim());
+            }
+            return exitCode == 0;
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to send {} to {}: {}", signal, server.getServerInfo().getName(), e.getMessage());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        return false;
+    }
 
+    /**
+     * Gives a command a moment to fail, returning as soon as it exits.
+     *
+     * @return true if the process exited within the window.
+     */
+    private static boolean waitForExit(Process process) {
+        try {
+            return process.waitFor(EARLY_EXIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return !process.isAlive();
+        }
+    }
+
+    private CommandRunner.CommandResult runCommand(String path, String command, Boolean preserveQuotes) throws RuntimeException {
+        CommandRunner.CommandResult commandResult = CommandRunner.runCommand(path, command, preserveQuotes);
         if (commandResult.failedToStart()) {
             throw new RuntimeException(commandResult.getErrorMessage());
         }
 
+        // This is only to catch immediate errors
+        waitForExit(commandResult.getProcess());
+
         plugin.getLogger().debug("Command Result: {}", commandResult);
         if (commandResult.isTerminated()) {
             String out = commandResult.getProcessOutput();
@@ -74,6 +238,6 @@ public class LocalStartable implements Startable {
                 throw new RuntimeException("Command failed to run.");
             }
         }
-        return "Command ran successfully";
+        return commandResult;
     }
 }
@@ -0,0 +1,152 @@
+package me.artificial.autoserver.velocity.startable;
+
+import me.artificial.autoserver.velocity.AutoServerLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Watches a server process started by {@link LocalStartable}.
+ * <p>
+ * The output of the process is read on a background thread as it is written, so a server that logs a
+ * lot never blocks on a full pipe. The last lines are kept in a ring buffer for the console command.
+ * When the process exits without being asked to stop, the exit is reported as a crash.
+ * Console commands are written straight to the stdin pipe of the process.
+ */
+public class ProcessSupervisor {
+    private final AutoServerLogger logger;
+    private final String serverName;
+    private final Process process;
+    private final int capacity;
+    private final Deque<String> lines;
+    private Thread reader;
+    private volatile boolean armed = false;
+    private volatile boolean stopRequested = false;
+
+    public ProcessSupervisor(AutoServerLogger logger, String serverName, Process process, int capacity) {
+        this.logger = logger;
+        this.serverName = serverName;
+        this.process = process;
+        this.capacity = Math.max(1, capacity);
+        this.lines = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Starts draining output and watching for the process to exit.
+     *
+     * @param onCrash Called with the exit code if the process exits without a stop being requested.
+     */
+    public void start(IntConsumer onCrash) {
+        // a new run, nothing is known about it yet
+        armed = false;
+        stopRequested = false;
+        reader = new Thread(this::drain, "AutoServer-Console-" + serverName);
+        reader.setDaemon(true);
+        reader.start();
+
+        process.onExit().thenAccept(exited -> {
+            int exitCode = exited.exitValue();
+            try {
+                // let the reader catch up so the last lines are in the buffer
+                reader.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!armed || stopRequested) {
+                logger.debug("Server {} process exited with code {}", serverName, exitCode);
+                return;
+            }
+            logger.warn("Server {} process exited unexpectedly with code {}", serverName, exitCode);
+            for (String line : tail(10)) {
+                logger.warn("[{}] {}", serverName, line);
+            }
+            onCrash.accept(exitCode);
+        });
+    }
+
+    /**
+     * Starts reporting crashes, called once the process has survived its first moments.
+     * Until then an exit is left to the caller, a launcher that detaches exits straight away.
+     */
+    public void arm() {
+        armed = true;
+    }
+
+    /**
+     * Marks the coming exit as expected so it is not reported as a crash.
+     */
+    public void stopRequested() {
+        stopRequested = true;
+    }
+
+    /**
+     * Takes back {@link #stopRequested()} after a stop that did not take, an exit is a crash again.
+     */
+    public void stopAbandoned() {
+        stopRequested = false;
+    }
+
+    /**
+     * Writes a line to the console of the server, as if it was typed in.
+     *
+     * @param command The console command, without a line ending.
+     * @return true if the command was written, false if the process is gone or its input is closed.
+     */
+    public boolean sendCommand(String command) {
+        if (!process.isAlive()) {
+            return false;
+        }
+        OutputStream input = process.getOutputStream();
+        synchronized (input) {
+            try {
+                input.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+                input.flush();
+                logger.debug("Sent console command to {}: {}", serverName, command);
+                return true;
+            } catch (IOException e) {
+                logger.warn("Failed to write to console of {}: {}", serverName, e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    public Process getProcess() {
+        return process;
+    }
+
+    /**
+     * @param count Maximum number of lines to return.
+     * @return The most recent console lines, oldest first.
+     */
+    public List<String> tail(int count) {
+        synchronized (lines) {
+            List<String> all = new ArrayList<>(lines);
+            return all.subList(Math.max(0, all.size() - count), all.size());
+        }
+    }
+
+    private void drain() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.trace("[{}] {}", serverName, line);
+                synchronized (lines) {
+                    if (lines.size() == capacity) {
+                        lines.removeFirst();
+                    }
+                    lines.addLast(line);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Stopped reading console of {}: {}", serverName, e.getMessage());
+        }
+    }
+}
@@ -2,29 +2,79 @@ package me.artificial.autoserver.velocity.startable;
 
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import me.artificial.autoserver.velocity.AutoServer;
+import me.artificial.autoserver.common.ControlProtocol;
 import me.artificial.autoserver.common.NetworkCommands;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
-import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RemoteStartable implements Startable {
     private static final int TIMEOUT = 5000;
+    private static final int CONNECT_TIMEOUT = 3000;
+    private static final long STOP_REQUEST_TIMEOUT = 30;
+    private static final long STATUS_REQUEST_TIMEOUT = 2;
     private final AutoServer plugin;
     private final RegisteredServer server;
+    private final ControlSession session;
+    private final Executor executor;
 
-    public RemoteStartable(AutoServer plugin, RegisteredServer server) {
+    /**
+     * @param session Control session to the Boot Listener of the server, or null to always use one connection per command.
+     * @param executor Runs the one-shot connection, which blocks until the server is ready.
+     */
+    public RemoteStartable(AutoServer plugin, RegisteredServer server, ControlSession session, Executor executor) {
         this.plugin = plugin;
         this.server = server;
+        this.session = session;
+        this.executor = executor;
+    }
+
+    public Optional<ControlSession> getSession() {
+        return Optional.ofNullable(session);
     }
 
     @Override
     public CompletableFuture<String> start() {
+        if (session != null && session.isConnected()) {
+            return startOverSession();
+        }
+        return startOverConnection();
+    }
+
+    private CompletableFuture<String> startOverSession() {
+        plugin.getLogger().debug("Sending BOOT command over control session");
+        AtomicBoolean booted = new AtomicBoolean(false);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Duration timeout = Duration.ofSeconds(plugin.getConfig().getStartupTimeout(server));
+        return session.request(NetworkCommands.BOOT, remoteServer(), timeout, answer -> {
+            if (NetworkCommands.FAILED.equals(answer) || NetworkCommands.ERROR.equals(answer)) {
+                failed.set(true);
+            }
+            return handleBootAnswer(answer, booted);
+        }).handle((answer, ex) -> {
+            if (ex == null) {
+                return "Backend server ready";
+            }
+            if (booted.get() && !failed.get()) {
+                // the listener exits once it has launched the server, pinging takes over from here
+                plugin.getLogger().debug("Backend server stopped reporting progress, falling back to pinging.");
+                return "Backend server booting";
+            }
+            throw ex instanceof CompletionException completion ? completion : new CompletionException(ex);
+        });
+    }
+
+    private CompletableFuture<String> startOverConnection() {
         return CompletableFuture.supplyAsync(() -> {
             plugin.getLogger().trace("RemoteStartable start enter");
             // validate port
@@ -43,8 +93,11 @@ public class RemoteStartable implements Startable {
                 throw new RuntimeException("Security failed.");
             }
 
+            // set once the backend has launched the server, newer backends keep reporting until READY
+            AtomicBoolean booted = new AtomicBoolean(false);
+
             // setup socket
-            try (Socket socket = new Socket(ip, port.get());
+            try (Socket socket = connect(ip, port.get());
                  InputStream input = socket.getInputStream();
                  OutputStream output = socket.getOutputStream()) {
                 socket.setSoTimeout(TIMEOUT);
@@ -98,8 +151,8 @@ public class RemoteStartable implements Startable {
                                 plugin.getLogger().error("Backend server failed to start. Message: {}", message);
                                 throw new RuntimeException("Backend server failed to start.");
                             case "ERROR":
-                                plugin.getLogger().warn("Error occurred on the backend server with message: {}", message);
-                                break;
+                                plugin.getLogger().error("Error occurred on the backend server with message: {}", message);
+                                throw new RuntimeException("Backend server refused to start: " + message);
                             default:
                                 plugin.getLogger().warn("Unexpected status received: {}. Message: {}", status, message);
                                 break;
@@ -110,58 +163,172 @@ public class RemoteStartable implements Startable {
                         throw new RuntimeException("No response received from the server.");
                     }
                     // End of section that will be deprecated-----------------------------------------------------------
+                } else if (communicationVersion >= 3) {
+                    // binary protocol, see ControlProtocol
+                    ControlProtocol.Codec codec = new ControlProtocol.Codec(securityEnabled ? secret : null);
+                    codec.writeFrame(output, NetworkCommands.BOOT, 0, remoteServer());
+
+                    ControlProtocol.Frame frame = new ControlProtocol.Frame();
+                    while (true) {
+                        try {
+                            codec.readFrame(input, frame);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        plugin.getLogger().debug("Received command: {}", frame);
+                        if (handleBootAnswer(frame.getCommand(), booted)) {
+                            return "Backend server ready";
+                        }
+                    }
+                    if (booted.get()) {
+                        return "Backend server booting";
+                    }
                 } else {
                     // 1.4.0 version of communication
-                    byte[] encoded = NetworkCommands.encodeData(NetworkCommands.BOOT, securityEnabled, secret);
+                    byte[] encoded = NetworkCommands.encodeData(target(NetworkCommands.BOOT), securityEnabled, secret);
                     output.write(encoded);
                     output.flush();
 
+                    DataInputStream dataInput = new DataInputStream(input);
                     while (true) {
-                        byte[] lengthBytes = new byte[4];
-                        if (input.read(lengthBytes) != 4) break;
-
-                        ByteBuffer lengthBuffer = ByteBuffer.wrap(lengthBytes);
-                        int totalLength = lengthBuffer.getInt();
-
-                        byte[] dataBytes = new byte[totalLength];
-                        if (input.read(dataBytes) != totalLength) break;
+                        byte[] dataBytes;
+                        try {
+                            int totalLength = dataInput.readInt();
+                            dataBytes = new byte[totalLength];
+                            dataInput.readFully(dataBytes);
+                        } catch (EOFException e) {
+                            break;
+                        }
 
                         NetworkCommands.DecodedMessage decodedMessage = NetworkCommands.decodeData(dataBytes, securityEnabled);
 
                         // Handle command
                         plugin.getLogger().debug("Received command: {}", decodedMessage);
-                        switch (decodedMessage.getCommand()) {
-                            case NetworkCommands.ACKNOWLEDGED:
-                                plugin.getLogger().info("Backend server has acknowledged boot command.");
-                                break;
-                            case NetworkCommands.COMPLETED:
-                                plugin.getLogger().info("Backend server booting.");
-                                return "Backend server booting";
-                            case NetworkCommands.FAILED:
-                                plugin.getLogger().error("Backend server failed to start.");
-                                throw new RuntimeException("Backend server failed to start.");
-                            case NetworkCommands.ERROR:
-                                plugin.getLogger().warn("Error occurred on the backend server.");
-                                break;
-                            default: // Unrecognized status received from the backend
-                                plugin.getLogger().warn("Unexpected command: {}", decodedMessage.getCommand());
-                                break;
+                        if (handleBootAnswer(decodedMessage.getCommand(), booted)) {
+                            return "Backend server ready";
                         }
                     }
+                    if (booted.get()) {
+                        // Older backends close the connection right after COMPLETED
+                        return "Backend server booting";
+                    }
                 }
             } catch (SocketTimeoutException e) {
+                if (booted.get()) {
+                    plugin.getLogger().warn("Backend server stopped reporting progress, falling back to pinging.");
+                    return "Backend server booting";
+                }
                 plugin.getLogger().error("Timeout waiting for server response.");
             } catch (SocketException e) {
+                if (booted.get()) {
+                    return "Backend server booting";
+                }
                 plugin.getLogger().error("Socket closed, exiting read loop.");
             } catch (IOException e) {
                 throw new RuntimeException("Error while communicating with the server.");
             }
             throw new RuntimeException("Unknown Error.");
-        });
+        }, executor);
     }
 
+    /**
+     * Logs an answer to a boot request.
+     *
+     * @param answer The answer from the Boot Listener.
+     * @param booted Set once the Boot Listener has launched the server.
+     * @return true if the server is ready, false while more answers are expected.
+     * @throws RuntimeException If the server failed to start or the Boot Listener refused the request.
+     */
+    private boolean handleBootAnswer(String answer, AtomicBoolean booted) {
+        switch (answer) {
+            case NetworkCommands.ACKNOWLEDGED:
+                plugin.getLogger().info("Backend server has acknowledged boot command.");
+                break;
+            case NetworkCommands.COMPLETED:
+                plugin.getLogger().info("Backend server booting.");
+                booted.set(true);
+                break;
+            case NetworkCommands.PROCESS_ALIVE:
+                plugin.getLogger().debug("Backend server process is running.");
+                break;
+            case NetworkCommands.PORT_LISTENING:
+                plugin.getLogger().info("Backend server is accepting connections.");
+                break;
+            case NetworkCommands.PROGRESS:
+                plugin.getLogger().trace("Backend server is still starting.");
+                break;
+            case NetworkCommands.READY:
+                plugin.getLogger().info("Backend server is ready.");
+                return true;
+            case NetworkCommands.FAILED:
+                plugin.getLogger().error("Backend server failed to start.");
+                throw new RuntimeException("Backend server failed to start.");
+            case NetworkCommands.ERROR:
+                // Sent for a server the listener does not know, or when it is too busy to take the request
+                plugin.getLogger().error("Boot Listener refused to start {}.", server.getServerInfo().getName());
+                throw new RuntimeException("Boot Listener refused the boot request, it does not know server "
+                        + Optional.ofNullable(remoteServer()).orElse(server.getServerInfo().getName())
+                        + " or has too many requests running. Check the Boot Listener console.");
+            default: // Unrecognized status received from the backend
+                plugin.getLogger().warn("Unexpected command: {}", answer);
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * Addresses a command to the server on the Boot Listener, which may manage several.
+     */
+    private String target(String command) {
+        return NetworkCommands.withServer(command, remoteServer());
+    }
+
+    /**
+     * @return Name of the server on the Boot Listener, or null for its only server.
+     */
+    private String remoteServer() {
+        return plugin.getConfig().getRemoteServer(server).orElse(null);
+    }
+
+    private static Socket connect(InetAddress ip, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(ip, port), CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Asks the Boot Listener to run its stop command. Only possible over a control session.
+     */
     @Override
     public CompletableFuture<String> stop() {
-        return null;
+        if (session == null || !session.isConnected()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "No control session to the Boot Listener of " + server.getServerInfo().getName() + ", stop it from its own console."));
+        }
+        return session.request(NetworkCommands.STOP, remoteServer(), Duration.ofSeconds(STOP_REQUEST_TIMEOUT), answer -> true)
+                .thenApply(answer -> switch (answer) {
+                    case NetworkCommands.SUCCESS -> "Stop command sent";
+                    case NetworkCommands.ERROR -> throw new RuntimeException("Boot Listener has no stop command configured or does not know the server.");
+                    default -> throw new RuntimeException("Boot Listener failed to run the stop command.");
+                });
+    }
+
+    /**
+     * Asks the Boot Listener if the server is running.
+     *
+     * @return A CompletableFuture that completes with RUNNING, STOPPED, or UNKNOWN. UNKNOWN as well when
+     *         there is no control session or it does not answer in time.
+     */
+    public CompletableFuture<String> queryStatus() {
+        if (session == null || !session.isConnected()) {
+            return CompletableFuture.completedFuture(NetworkCommands.UNKNOWN);
+        }
+        return session.request(NetworkCommands.STATUS, remoteServer(), Duration.ofSeconds(STATUS_REQUEST_TIMEOUT), answer -> true)
+                .exceptionally(ex -> NetworkCommands.UNKNOWN);
     }
 }